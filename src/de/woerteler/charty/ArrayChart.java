@@ -0,0 +1,211 @@
+package de.woerteler.charty;
+
+import java.util.Arrays;
+
+/**
+ * Chart storing the edges in primitive parallel arrays, indexed by the edge
+ * ID. No object is allocated per edge, so even charts with tens of millions
+ * of edges put no pressure on the garbage collector. Duplicate edges are
+ * detected through an open-addressing hash table of edge IDs.
+ *
+ * <p>The backpointer pairs of all edges share a single pool. Every edge owns
+ * a segment of the pool; when it is full, the segment is moved to the end of
+ * the pool with twice the capacity, so pairs can still be accessed by index.
+ * </p>
+ *
+ * @author Leo Woerteler
+ */
+final class ArrayChart extends Chart {
+
+  /** Initial capacity, must be a power of two. */
+  private static final int CAP = 64;
+
+  /** Start positions. */
+  private int[] starts = new int[CAP];
+  /** End positions. */
+  private int[] ends = new int[CAP];
+  /** Dot positions. */
+  private int[] dots = new int[CAP];
+  /** Rule IDs. */
+  private int[] rules = new int[CAP];
+  /** Symbols after the dot, {@code -1} for inactive edges. */
+  private int[] nexts = new int[CAP];
+  /** Offsets of the edges' backpointer segments in {@link #pool}. */
+  private int[] linkOffs = new int[CAP];
+  /** Number of backpointer pairs per edge. */
+  private int[] linkSizes = new int[CAP];
+  /** Capacities of the backpointer segments, in pairs. */
+  private int[] linkCaps = new int[CAP];
+  /** Number of edges. */
+  private int size;
+
+  /** Backpointer pairs of all edges. */
+  private int[] pool = new int[CAP];
+  /** Used length of {@link #pool}. */
+  private int poolSize;
+
+  /** Hash table of edge IDs plus one, {@code 0} marks empty slots. */
+  private int[] table = new int[CAP << 1];
+
+  /**
+   * Constructor.
+   *
+   * @param g grammar
+   */
+  ArrayChart(final Grammar g) {
+    super(g);
+  }
+
+  @Override
+  int size() {
+    return size;
+  }
+
+  @Override
+  int add(final int start, final int end, final int dot, final int rule) {
+    final int mask = table.length - 1;
+    int s = slot(hash(start, end, dot, rule), mask);
+    for(int t; (t = table[s]) != 0; s = s + 1 & mask) {
+      final int e = t - 1;
+      if(starts[e] == start && ends[e] == end && dots[e] == dot
+          && rules[e] == rule) return e;
+    }
+
+    final int id = size;
+    if(id == starts.length) grow();
+    starts[id] = start;
+    ends[id] = end;
+    dots[id] = dot;
+    rules[id] = rule;
+    nexts[id] = next(dot, rule);
+    size++;
+    if(size > table.length >>> 1) {
+      rehash();
+    } else {
+      table[s] = id + 1;
+    }
+    return id;
+  }
+
+  @Override
+  void truncate(final int n) {
+    // later edges never lie on the probe sequence of earlier ones
+    final int mask = table.length - 1;
+    for(int e = size; --e >= n;) {
+      int s = slot(hash(starts[e], ends[e], dots[e], rules[e]), mask);
+      while(table[s] != e + 1) s = s + 1 & mask;
+      table[s] = 0;
+      // segments of earlier edges stopped growing before this one was added
+      if(linkCaps[e] != 0) poolSize = Math.min(poolSize, linkOffs[e]);
+      linkOffs[e] = 0;
+      linkSizes[e] = 0;
+      linkCaps[e] = 0;
+    }
+    size = Math.min(size, n);
+  }
+
+  @Override
+  int start(final int e) {
+    return starts[e];
+  }
+
+  @Override
+  int end(final int e) {
+    return ends[e];
+  }
+
+  @Override
+  int dot(final int e) {
+    return dots[e];
+  }
+
+  @Override
+  int rule(final int e) {
+    return rules[e];
+  }
+
+  @Override
+  int next(final int e) {
+    return nexts[e];
+  }
+
+  @Override
+  void link(final int e, final int pred, final int child) {
+    final int n = linkSizes[e];
+    if(n == linkCaps[e]) {
+      // move the segment to the end of the pool
+      final int cap = Math.max(1, n << 1);
+      if(poolSize + 2 * cap > pool.length) {
+        pool = Arrays.copyOf(pool, Math.max(pool.length << 1,
+            poolSize + 2 * cap));
+      }
+      System.arraycopy(pool, linkOffs[e], pool, poolSize, 2 * n);
+      linkOffs[e] = poolSize;
+      linkCaps[e] = cap;
+      poolSize += 2 * cap;
+    }
+    final int off = linkOffs[e] + 2 * n;
+    pool[off] = pred;
+    pool[off + 1] = child;
+    linkSizes[e] = n + 1;
+  }
+
+  @Override
+  void link(final int e, final int l, final int pred, final int child) {
+    final int off = linkOffs[e] + 2 * l;
+    pool[off] = pred;
+    pool[off + 1] = child;
+  }
+
+  @Override
+  int links(final int e) {
+    return linkSizes[e];
+  }
+
+  @Override
+  int pred(final int e, final int l) {
+    return pool[linkOffs[e] + 2 * l];
+  }
+
+  @Override
+  int child(final int e, final int l) {
+    return pool[linkOffs[e] + 2 * l + 1];
+  }
+
+  /** Doubles the capacity of the edge arrays. */
+  private void grow() {
+    final int cap = starts.length << 1;
+    starts = Arrays.copyOf(starts, cap);
+    ends = Arrays.copyOf(ends, cap);
+    dots = Arrays.copyOf(dots, cap);
+    rules = Arrays.copyOf(rules, cap);
+    nexts = Arrays.copyOf(nexts, cap);
+    linkOffs = Arrays.copyOf(linkOffs, cap);
+    linkSizes = Arrays.copyOf(linkSizes, cap);
+    linkCaps = Arrays.copyOf(linkCaps, cap);
+  }
+
+  /** Doubles the size of the hash table and reinserts all edges. */
+  private void rehash() {
+    table = new int[table.length << 1];
+    final int mask = table.length - 1;
+    for(int e = 0; e < size; e++) {
+      int s = slot(hash(starts[e], ends[e], dots[e], rules[e]), mask);
+      while(table[s] != 0) s = s + 1 & mask;
+      table[s] = e + 1;
+    }
+  }
+
+  /**
+   * Returns the home slot of a hash code in the hash table.
+   *
+   * @param hash hash code
+   * @param mask hash table size minus one
+   * @return slot
+   */
+  private static int slot(final int hash, final int mask) {
+    final int h = hash * 0x9E3779B9;
+    return (h ^ h >>> 16) & mask;
+  }
+
+}
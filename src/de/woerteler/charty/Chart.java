@@ -0,0 +1,250 @@
+package de.woerteler.charty;
+
+/**
+ * Storage of the edges of a chart. Edges are addressed by their integer ID,
+ * which is their position in insertion order. An edge is identified by its
+ * span, dot position and rule; adding an edge that is already present returns
+ * the ID of the existing one, so that alternative derivations are packed into
+ * it as additional backpointer pairs.
+ *
+ * <p>Edges are only ever removed by {@link #truncate(int)}, which drops the
+ * most recently added ones. Parse forests over a chart become invalid if any
+ * of the edges they cover are removed.</p>
+ *
+ * <p>Unary rules are applied a whole {@link Grammar#chains(int) chain} at a
+ * time. The edge of the last rule of the chain then points directly to the
+ * consumed edge, and the chain is encoded in place of the predecessor; the
+ * edges of the other rules of the chain are not referenced.</p>
+ *
+ * @author Leo Woerteler
+ */
+abstract class Chart {
+
+  /** Grammar. */
+  final Grammar grammar;
+
+  /**
+   * Constructor.
+   *
+   * @param g grammar
+   */
+  Chart(final Grammar g) {
+    grammar = g;
+  }
+
+  /**
+   * Creates an empty chart using the given storage.
+   *
+   * @param g grammar
+   * @param storage storage backend
+   * @return chart
+   */
+  static Chart create(final Grammar g, final ParserOptions.Storage storage) {
+    return storage == ParserOptions.Storage.ARRAYS ? new ArrayChart(g)
+        : new ObjectChart(g);
+  }
+
+  /**
+   * Number of edges in the chart.
+   *
+   * @return number of edges
+   */
+  abstract int size();
+
+  /**
+   * Adds an edge to the chart if no equal edge is present.
+   *
+   * @param start start position
+   * @param end end position
+   * @param dot dot position
+   * @param rule rule ID
+   * @return ID of the edge, equal to the previous {@link #size()} if it is new
+   */
+  abstract int add(int start, int end, int dot, int rule);
+
+  /**
+   * Removes the most recently added edges. The backpointers of the remaining
+   * edges must not refer to any of them.
+   *
+   * @param n number of edges to keep
+   */
+  abstract void truncate(int n);
+
+  /**
+   * Start position of an edge.
+   *
+   * @param e edge ID
+   * @return start position
+   */
+  abstract int start(int e);
+
+  /**
+   * End position of an edge.
+   *
+   * @param e edge ID
+   * @return end position
+   */
+  abstract int end(int e);
+
+  /**
+   * Dot position of an edge.
+   *
+   * @param e edge ID
+   * @return dot position
+   */
+  abstract int dot(int e);
+
+  /**
+   * Rule of an edge.
+   *
+   * @param e edge ID
+   * @return rule ID
+   */
+  abstract int rule(int e);
+
+  /**
+   * Symbol after the dot of an edge.
+   *
+   * @param e edge ID
+   * @return symbol ID, {@code -1} if the edge is inactive
+   */
+  abstract int next(int e);
+
+  /**
+   * Adds a backpointer pair to an edge.
+   *
+   * @param e edge ID
+   * @param pred ID of the predecessor edge, {@code -1} for rule invocation,
+   *   or an encoded {@link #chainLink(int) unary chain}
+   * @param child ID of the consumed inactive edge
+   */
+  abstract void link(int e, int pred, int child);
+
+  /**
+   * Replaces a backpointer pair of an edge.
+   *
+   * @param e edge ID
+   * @param l index of the pair
+   * @param pred ID of the predecessor edge, {@code -1} for rule invocation
+   * @param child ID of the consumed inactive edge
+   */
+  abstract void link(int e, int l, int pred, int child);
+
+  /**
+   * Number of backpointer pairs of an edge, zero for lexical edges.
+   *
+   * @param e edge ID
+   * @return number of pairs
+   */
+  abstract int links(int e);
+
+  /**
+   * Predecessor of one of the backpointer pairs of an edge.
+   *
+   * @param e edge ID
+   * @param l index of the pair
+   * @return ID of the predecessor edge, {@code -1} for rule invocation
+   */
+  abstract int pred(int e, int l);
+
+  /**
+   * Consumed inactive edge of one of the backpointer pairs of an edge.
+   *
+   * @param e edge ID
+   * @param l index of the pair
+   * @return ID of the child edge
+   */
+  abstract int child(int e, int l);
+
+  /**
+   * Encodes a unary chain as the predecessor of a backpointer pair. The
+   * encoded values are below {@code -1}, so they are never edge IDs.
+   *
+   * @param chain chain ID
+   * @return encoded chain
+   */
+  static int chainLink(final int chain) {
+    return -2 - chain;
+  }
+
+  /**
+   * Decodes the unary chain of a backpointer pair.
+   *
+   * @param pred predecessor of the pair
+   * @return chain ID, {@code -1} if the pair does not apply a chain
+   */
+  static int chain(final int pred) {
+    return pred < -1 ? -2 - pred : -1;
+  }
+
+  /**
+   * Checks whether an edge is still active.
+   *
+   * @param e edge ID
+   * @return {@code true}, if the edge is active, {@code false} otherwise.
+   */
+  final boolean isActive(final int e) {
+    return next(e) >= 0;
+  }
+
+  /**
+   * Brings the backpointer pairs of every edge into a canonical order, by the
+   * start position and then the rule of the consumed inactive edge. This
+   * pair identifies a derivation of an edge, so the order of the unpacked
+   * trees does not depend on the order in which the edges were found.
+   *
+   * @param from ID of the first edge to sort the backpointers of
+   */
+  final void sortLinks(final int from) {
+    for(int e = from; e < size(); e++) {
+      // almost all edges have only a handful of derivations
+      for(int l = 1; l < links(e); l++) {
+        final int pred = pred(e, l), child = child(e, l);
+        int m = l;
+        for(; m > 0 && compare(child(e, m - 1), child) > 0; m--) {
+          link(e, m, pred(e, m - 1), child(e, m - 1));
+        }
+        link(e, m, pred, child);
+      }
+    }
+  }
+
+  /**
+   * Compares two inactive edges by their start position and rule.
+   *
+   * @param a ID of the first edge
+   * @param b ID of the second edge
+   * @return negative value, zero or positive value
+   */
+  private int compare(final int a, final int b) {
+    final int sa = start(a), sb = start(b);
+    if(sa != sb) return sa < sb ? -1 : 1;
+    final int ra = rule(a), rb = rule(b);
+    return ra < rb ? -1 : ra > rb ? 1 : 0;
+  }
+
+  /**
+   * Symbol after the given dot position of a rule.
+   *
+   * @param dot dot position
+   * @param rule rule ID
+   * @return symbol ID, {@code -1} if the dot is at the end
+   */
+  final int next(final int dot, final int rule) {
+    return dot < grammar.length(rule) ? grammar.rhs(rule, dot) : -1;
+  }
+
+  /**
+   * Hash code of an edge.
+   *
+   * @param s start position
+   * @param e end position
+   * @param d dot position
+   * @param r rule ID
+   * @return hash code
+   */
+  static int hash(final int s, final int e, final int d, final int r) {
+    return ((s * 31 + e) * 31 + d) * 31 + r;
+  }
+
+}
@@ -1,46 +1,342 @@
 package de.woerteler.charty;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
+
+import de.woerteler.util.IntList;
 
 /**
- * This class implements a chart parser.
+ * This class implements a chart parser. Rules are invoked bottom-up on
+ * completed edges, but only if their left-hand side can be the left corner of
+ * a symbol expected at the edge's start: the start symbol at the beginning of
+ * the input, and the symbols after the dot of the active edges ending there
+ * everywhere else. The expected left corners are looked up in the grammar's
+ * precomputed left-corner table and kept as a bitset per position.
+ *
+ * <p>Active edges are only created if the rest of their rule fits into the
+ * remaining input, according to the minimum yields of its symbols, and if the
+ * symbol after the dot can start with the next token.</p>
+ *
+ * <p>Two strategies are available. The default bottom-up strategy adds an
+ * edge for every lexical rule of an input token, the Earley strategy only for
+ * those whose left-hand side is expected. Both produce the same parse trees
+ * in the same order.</p>
+ *
+ * <p>For weighted grammars, the cost of the best derivation of every edge is
+ * kept, and complete derivations that are worse than the best one of the
+ * same symbol over the same span by more than the
+ * {@link ParserOptions#beam(double) beam width} are dropped. The complete
+ * derivations of the chart cells ending at a token are then collected first
+ * and added cell by cell, from the shortest span to the longest, so that the
+ * best derivation of a cell is known before any of them is added or
+ * used.</p>
  *
  * @author Leo Woerteler
  */
 public final class ChartParser {
 
+  /** Mask of the numbers of processed edges after which the clock is read. */
+  private static final int CHECK_MASK = 0xFF;
+  /** Parser steps, indexed by their ordinal. */
+  private static final ParserEventListener.Kind[] KINDS =
+      ParserEventListener.Kind.values();
+
   /** Grammar. */
   private final Grammar grammar;
-  /** Tokens to parse. */
-  final String[] tokens;
+  /** Tokens to parse; in a session, only the first {@link #length} are valid. */
+  private String[] tokens;
+  /** Number of tokens processed so far. */
+  private int length;
+
+  /** Listener for parser events, {@code null} if there is none. */
+  private final ParserEventListener events;
+  /** Flag for firing an event for every added edge. */
+  private final boolean edgeEvents;
+  /** Flag for firing an event for every edge of the finished chart. */
+  private final boolean chartEvents;
+  /** Flag for firing an event when the budget runs out. */
+  private final boolean stopEvents;
+
+  /** Flag for the Earley strategy. */
+  private final boolean earley;
+  /** Number of threads, the chart is filled by span length if more than one. */
+  private final int threads;
+  /** Start symbol, {@code -1} if every symbol is accepted. */
+  private final int start;
+  /** Expected symbols as bitsets, indexed by position, {@code null} if none. */
+  private long[][] predicted;
+  /**
+   * Symbols that can start with the token at each position, as bitsets;
+   * {@code null} in a session, where the following tokens are not known yet.
+   */
+  private final long[][] lookahead;
 
-  /** Optional listener for parser events. */
-  private final ParserInfoListener listener;
+  /** The chart. */
+  private final Chart chart;
+  /**
+   * Number of processed edges. Edges are processed in the order they were
+   * added, so all edges from here on form the agenda.
+   */
+  private int processed;
+  /**
+   * Number of edges ending at or before each position. All edges created while
+   * processing a token end after it, so the edges are ordered by end position.
+   */
+  private final IntList bounds = new IntList();
+  /** Number of edges whose backpointers have been sorted. */
+  private int sorted;
 
-  /** List of edges. */
-  private final List<Edge> chart = new ArrayList<Edge>();
+  /** Beam width, only used if {@link #inside} is present. */
+  private final double beam;
+  /**
+   * Cost of the best derivation of every edge, indexed by edge ID;
+   * {@code null} if nothing is pruned.
+   */
+  private double[] inside;
+  /**
+   * Complete derivations of the cells ending at the current token that were
+   * not added yet, indexed by start position, as quadruples of rule,
+   * predecessor, child and parser step; only used if derivations are pruned.
+   */
+  private IntList[] pending;
+  /** Start position of the cell whose derivations were added last. */
+  private int cell;
+  /**
+   * Cost of the best derivation of every symbol in that cell, indexed by
+   * symbol ID, {@link Double#POSITIVE_INFINITY} for all other symbols.
+   */
+  private double[] best;
+  /** Symbols with a derivation in that cell. */
+  private final IntList bestSymbols = new IntList();
+
+  /** Resource limits, {@code null} if there are none. */
+  private ParseBudget budget;
+  /** Outcome of the parse so far. */
+  private ParseForest.Status status = ParseForest.Status.COMPLETE;
+
+  /** Retired active edges, indexed by end position and symbol after the dot. */
+  private final EdgeIndex actives = new EdgeIndex();
+  /** Retired inactive edges, indexed by start position and left-hand side. */
+  private final EdgeIndex inactives = new EdgeIndex();
 
   /**
    * Constructor taking the grammar an tokens to parse.
-   * 
+   *
    * @param g grammar
-   * @param tok tokens to parse
-   * @param list info listener, may be {@code null}
+   * @param tok tokens to parse, {@code null} for a session
+   * @param list info listener, may be {@code null} to use the event listener
+   *   of the options instead
+   * @param opts parser options
+   * @throws ParserException if the start symbol is unknown
    */
-  private ChartParser(final Grammar g, final String[] tok,
-      final ParserInfoListener list) {
+  ChartParser(final Grammar g, final String[] tok,
+      final ParserInfoListener list, final ParserOptions opts)
+          throws ParserException {
     grammar = g;
-    tokens = tok;
-    listener = list;
+    tokens = tok == null ? new String[8] : tok;
+    events = list != null ? new ParserInfoAdapter(g, list) : opts.getEvents();
+    final ParserEventListener.Level level = events == null
+        ? ParserEventListener.Level.OFF : events.getLevel();
+    stopEvents = level.compareTo(ParserEventListener.Level.SUMMARY) >= 0;
+    edgeEvents = level.compareTo(ParserEventListener.Level.EDGES) >= 0;
+    chartEvents = level.compareTo(ParserEventListener.Level.CHART) >= 0;
+    chart = Chart.create(g, opts.getStorage());
+    earley = opts.getEngine() == ParserOptions.Engine.EARLEY;
+    threads = opts.getThreads();
+    final String st = opts.getStart();
+    start = st == null ? -1 : g.id(st);
+    predicted = new long[tokens.length + 1][];
+    beam = opts.getBeam();
+    budget = opts.getBudget();
+    if(beam != Double.POSITIVE_INFINITY && g.isWeighted()) {
+      inside = new double[64];
+      best = new double[g.symbolCount()];
+      Arrays.fill(best, Double.POSITIVE_INFINITY);
+    }
+    if(tok == null) {
+      lookahead = null;
+    } else {
+      lookahead = new long[tok.length][];
+      for(int i = 0; i < tok.length; i++) {
+        lookahead[i] = new long[g.symbolCount() + 63 >>> 6];
+        g.startingWith(g.id(tok[i]), lookahead[i]);
+      }
+    }
+    if(st != null && start < 0) {
+      throw new ParserException("Unknown start symbol '" + st + "'.");
+    }
+
+    bounds.add(0);
+    if(start < 0) {
+      // every symbol may span the whole input
+      predicted[0] = new long[g.symbolCount() + 63 >>> 6];
+      Arrays.fill(predicted[0], -1L);
+    } else {
+      predict(start, 0);
+    }
+  }
+
+  /**
+   * Adds an edge to the chart and schedules it on the agenda. If an equal
+   * edge is already present, the derivation is packed into it instead.
+   * If derivations are pruned, complete derivations are held back until
+   * their cell is {@link #commit(int) committed}; those of unary chains on
+   * the committed cell are dropped right away if they are outside of the
+   * beam.
+   *
+   * @param start start position
+   * @param end end position
+   * @param dot dot position
+   * @param rule rule ID
+   * @param pred ID of the predecessor edge, {@code -1} if there is none
+   * @param child ID of the consumed inactive edge, {@code -1} if there is none
+   * @param kind parser step creating the edge
+   */
+  private void add(final int start, final int end, final int dot,
+      final int rule, final int pred, final int child,
+      final ParserEventListener.Kind kind) {
+    if(inside == null) {
+      insert(start, end, dot, rule, pred, child, kind, 0);
+    } else if(dot < grammar.length(rule)) {
+      insert(start, end, dot, rule, pred, child, kind, cost(rule, pred, child));
+    } else if(start < cell) {
+      IntList p = pending[start];
+      if(p == null) pending[start] = p = new IntList();
+      p.add(rule);
+      p.add(pred);
+      p.add(child);
+      p.add(kind.ordinal());
+    } else {
+      final double cost = cost(rule, pred, child);
+      if(cost <= best[grammar.lhs(rule)] + beam) {
+        insert(start, end, dot, rule, pred, child, kind, cost);
+      }
+    }
+  }
+
+  /**
+   * Inserts an edge into the chart, or packs the derivation into an equal
+   * edge that is already present.
+   *
+   * @param start start position
+   * @param end end position
+   * @param dot dot position
+   * @param rule rule ID
+   * @param pred ID of the predecessor edge, {@code -1} if there is none
+   * @param child ID of the consumed inactive edge, {@code -1} if there is none
+   * @param kind parser step creating the edge
+   * @param cost cost of the derivation, only used if derivations are pruned
+   */
+  private void insert(final int start, final int end, final int dot,
+      final int rule, final int pred, final int child,
+      final ParserEventListener.Kind kind, final double cost) {
+    final int size = chart.size();
+    final int e = chart.add(start, end, dot, rule);
+    if(child >= 0) chart.link(e, pred, child);
+    if(e == size && edgeEvents) {
+      events.edgeAdded(kind, e, start, end, dot, rule);
+    }
+
+    if(inside != null) {
+      if(e == size) {
+        if(e == inside.length) inside = Arrays.copyOf(inside, 2 * e);
+        inside[e] = cost;
+      } else {
+        inside[e] = Math.min(inside[e], cost);
+      }
+    }
+  }
+
+  /**
+   * Returns the cost of a derivation. The costs of the edges it consists of
+   * must be final.
+   *
+   * @param rule rule ID
+   * @param pred ID of the predecessor edge, {@code -1} if there is none
+   * @param child ID of the consumed inactive edge, {@code -1} if there is none
+   * @return cost
+   */
+  private double cost(final int rule, final int pred, final int child) {
+    final int chain = Chart.chain(pred);
+    return (pred >= 0 ? inside[pred] : chain >= 0 ? grammar.chainCost(chain)
+        : grammar.cost(rule)) + (child >= 0 ? inside[child] : 0);
+  }
+
+  /**
+   * Adds the complete derivations of the cell from the given position to the
+   * current token that are within the beam. All cells of shorter spans have
+   * been committed and processed before, so these are all derivations of the
+   * cell except for the unary chains on top of them, whose best costs are
+   * included in the comparison as well.
+   *
+   * @param s start position of the cell
+   */
+  private void commit(final int s) {
+    final IntList p = pending[s];
+    pending[s] = null;
+    cell = s;
+    for(int i = 0; i < bestSymbols.size(); i++) {
+      best[bestSymbols.get(i)] = Double.POSITIVE_INFINITY;
+    }
+    bestSymbols.truncate(0);
+
+    final int n = p.size() >>> 2;
+    final double[] costs = new double[n];
+    for(int d = 0; d < n; d++) {
+      final int rule = p.get(4 * d);
+      costs[d] = cost(rule, p.get(4 * d + 1), p.get(4 * d + 2));
+      lower(grammar.lhs(rule), costs[d]);
+    }
+    final int m = bestSymbols.size();
+    final double[] own = new double[m];
+    for(int i = 0; i < m; i++) own[i] = best[bestSymbols.get(i)];
+    for(int i = 0; i < m; i++) {
+      for(final int chain : grammar.chains(bestSymbols.get(i))) {
+        final int lhs = grammar.lhs(grammar.chainRule(chain));
+        if(isPredicted(lhs, s)) lower(lhs, grammar.chainCost(chain) + own[i]);
+      }
+    }
+
+    for(int d = 0; d < n; d++) {
+      final int rule = p.get(4 * d);
+      if(costs[d] <= best[grammar.lhs(rule)] + beam) {
+        insert(s, length + 1, grammar.length(rule), rule, p.get(4 * d + 1),
+            p.get(4 * d + 2), KINDS[p.get(4 * d + 3)], costs[d]);
+      }
+    }
+  }
+
+  /**
+   * Lowers the best cost of a symbol in the committed cell.
+   *
+   * @param sym symbol ID
+   * @param cost cost of a derivation of the symbol
+   */
+  private void lower(final int sym, final double cost) {
+    if(cost < best[sym]) {
+      if(best[sym] == Double.POSITIVE_INFINITY) bestSymbols.add(sym);
+      best[sym] = cost;
+    }
+  }
+
+  /**
+   * Retires a processed edge by inserting it into the index it belongs to.
+   * Only retired edges are visible to the fundamental rule, so every pair of
+   * edges is combined exactly once, when the later of the two is processed.
+   *
+   * @param e ID of the edge to retire
+   */
+  private void retire(final int e) {
+    if(chart.isActive(e)) {
+      actives.add(chart.end(e), chart.next(e), e);
+    } else {
+      inactives.add(chart.start(e), grammar.lhs(chart.rule(e)), e);
+    }
   }
 
   /**
    * Parses a sequence of tokens.
-   * 
+   *
    * @param g grammar definition
    * @param tok tokens to parse
    * @param listener info listener, may be {@code null}
@@ -50,280 +346,476 @@ public final class ChartParser {
   public static ParseTree[] parse(final Grammar g, final String[] tok,
       final ParserInfoListener listener)
           throws ParserException {
-    final List<ParseTree> trees = new ChartParser(g, tok, listener).parse();
-    return trees.toArray(new ParseTree[trees.size()]);
+    return parseForest(g, tok, listener).getTrees();
   }
 
   /**
-   * Performs the parse.
+   * Parses a sequence of tokens, using the given options.
    *
-   * @return list of parse trees
-   * @throws ParserException in case of errors
+   * @param g grammar definition
+   * @param tok tokens to parse
+   * @param listener info listener, may be {@code null}
+   * @param opts parser options
+   * @return generated parse trees
+   * @throws ParserException if the parser isn't successful
    */
-  private List<ParseTree> parse() throws ParserException {
-
-    int pos = 0;
-    for(int i = 0; i < tokens.length; i++) {
-      final String tok = tokens[i];
+  public static ParseTree[] parse(final Grammar g, final String[] tok,
+      final ParserInfoListener listener, final ParserOptions opts)
+          throws ParserException {
+    return parseForest(g, tok, listener, opts).getTrees();
+  }
 
-      // initialize with input token
-      for(final String lhs : grammar.getLHS(tok)) {
-        chart.add(new Edge(i, i + 1, 1, lhs, new String[] { tok},
-            new ArrayList<Edge>()));
-        log("I", "Adding edge: " + chart.get(chart.size() - 1));
-      }
+  /**
+   * Parses a sequence of tokens into a packed parse forest.
+   *
+   * @param g grammar definition
+   * @param tok tokens to parse
+   * @param listener info listener, may be {@code null}
+   * @return parse forest
+   * @throws ParserException if the parser isn't successful
+   */
+  public static ParseForest parseForest(final Grammar g, final String[] tok,
+      final ParserInfoListener listener) throws ParserException {
+    return parseForest(g, tok, listener, new ParserOptions());
+  }
 
-      boolean change;
-      do {
-        final int len = chart.size();
-        change = ruleInvocation(pos);
-        pos = len;
-        change |= fundamentalRule();
-      } while(change);
-    }
+  /**
+   * Parses a sequence of tokens into a packed parse forest, using the given
+   * options.
+   *
+   * @param g grammar definition
+   * @param tok tokens to parse
+   * @param listener info listener, may be {@code null}
+   * @param opts parser options
+   * @return parse forest
+   * @throws ParserException if the parser isn't successful
+   */
+  public static ParseForest parseForest(final Grammar g, final String[] tok,
+      final ParserInfoListener listener, final ParserOptions opts)
+          throws ParserException {
+    return new ChartParser(g, tok, listener, opts).parse();
+  }
 
-    final ArrayList<ParseTree> res = new ArrayList<ParseTree>();
-    for(final Edge e : chart) {
-      if(e.isActive()) {
-        log("Chart", "Active: " + e);
-      } else {
-        log("Chart", "Inactive: " + e);
-        if(e.isOverspanning()) {
-          res.add(new ParseTree(e));
-        }
-      }
+  /**
+   * Starts an incremental parse. Tokens are added one at a time, and after
+   * every token the session can tell whether the input read so far can still
+   * be completed to a parseable one, and return the parse forest of it. The
+   * number of threads in the options is ignored.
+   *
+   * @param g grammar definition
+   * @param listener info listener, may be {@code null}
+   * @param opts parser options
+   * @return empty session
+   * @throws ParserException if the start symbol is unknown
+   */
+  public static ParseSession session(final Grammar g,
+      final ParserInfoListener listener, final ParserOptions opts)
+          throws ParserException {
+    return new ParseSession(new ChartParser(g, null, listener, opts));
+  }
 
-    }
+  /**
+   * Parses a sequence of inputs on several threads. The inputs are read
+   * lazily while the results are consumed, and the results are returned in
+   * input order.
+   *
+   * @param g grammar definition, shared by all threads
+   * @param inputs token sequences to parse
+   * @param threads number of threads
+   * @param opts parser options for every input
+   * @return batch returning the results
+   */
+  public static ParseBatch parseAll(final Grammar g,
+      final Iterator<String[]> inputs, final int threads,
+      final ParserOptions opts) {
+    return new ParseBatch(g, inputs, threads, opts);
+  }
 
-    return res;
+  /**
+   * Checks whether a sequence of tokens can be parsed, without building the
+   * chart or any parse trees. The result is {@code true} if and only if
+   * {@link #parse(Grammar, String[], ParserInfoListener)} would return at
+   * least one tree; unknown tokens make the check fail instead of throwing
+   * an exception.
+   *
+   * @param g grammar definition
+   * @param tok tokens to check
+   * @return {@code true} if the tokens can be parsed, {@code false} otherwise
+   */
+  public static boolean recognize(final Grammar g, final String[] tok) {
+    return g.recognizer().recognize(tok);
   }
 
   /**
-   * The fundamental rule of chart parsing generates new edges by combining
-   * fitting active and inactive edges.
-   *
-   * @return change flag
-   */
-  private boolean fundamentalRule() {
-    boolean change = false;
-    for(int i = 0; i < chart.size(); i++) {
-      final Edge e = chart.get(i);
-      if(e.isActive()) {
-        for(int k = 0; k < chart.size(); k++) {
-          final Edge e2 = chart.get(k);
-          if(!e2.isActive() && e.matches(e2)) {
-            final Edge nw = new Edge(e, e2);
-            if(!chart.contains(nw)) {
-              chart.add(nw);
-              change = true;
-              log("FR", "Adding edge: " + nw);
-            }
-          }
+   * Performs the parse.
+   *
+   * @return parse forest
+   * @throws ParserException in case of errors
+   */
+  private ParseForest parse() throws ParserException {
+
+    if(threads > 1) {
+      for(final String tok : tokens) {
+        if(grammar.lexical(grammar.id(tok)).length == 0) {
+          throw new ParserException("Unknown terminal '" + tok + "'.");
         }
       }
+      status = new DiagonalParser(chart, tokens, lookahead,
+          edgeEvents ? events : null, threads, budget).run();
+      if(stopEvents && status != ParseForest.Status.COMPLETE) {
+        events.stopped(status);
+      }
+      length = tokens.length;
+    } else {
+      while(length < tokens.length && status == ParseForest.Status.COMPLETE) {
+        step();
+      }
     }
-    return change;
+
+    listChart();
+    return forest(0);
   }
 
   /**
-   * Add all the rules of the grammar to the chart that are relevant: Find the
-   * rule with the LHS of edge as the leftmost RHS symbol and maximally the
-   * remaining length of the input.
-   *
-   * @param pos current position in the chart
-   * @return change flag
-   */
-  private boolean ruleInvocation(final int pos) {
-    boolean change = false;
-    for(int i = pos; i < chart.size(); i++) {
-      final Edge e = chart.get(i);
-      if(!e.isActive()) {
-        for(final String lhs : grammar.withLeftmost(e.lhs)) {
-          for(final String[] rhs : grammar.rhs(lhs)) {
-            if(!rhs[0].equals(e.lhs) || rhs.length > tokens.length - e.start) {
-              continue;
-            }
-            final Edge nw = new Edge(e.start, e.end, 1, lhs, rhs,
-                new ArrayList<Edge>(Arrays.asList(e)));
-            if(!chart.contains(nw)) {
-              chart.add(nw);
-              change = true;
-              log("IV", "Adding edge: " + nw);
-            }
-          }
-        }
-      }
+   * Passes all edges of the chart to the event listener, if it wants them.
+   */
+  private void listChart() {
+    for(int e = 0; chartEvents && e < chart.size(); e++) {
+      events.chartEdge(e, chart.start(e), chart.end(e), chart.dot(e),
+          chart.rule(e), chart.isActive(e));
     }
-    return change;
   }
 
   /**
-   * Logs a message.
+   * Adds the next token of a session to the chart. Once the budget has run
+   * out, all tokens are ignored.
    *
-   * @param cat category
-   * @param desc message
+   * @param tok token
+   * @throws ParserException if the token is unknown
    */
-  private void log(final String cat, final String desc) {
-    if(listener != null) {
-      listener.info(cat, desc);
+  void push(final String tok) throws ParserException {
+    if(status != ParseForest.Status.COMPLETE) return;
+    if(length == tokens.length) {
+      tokens = Arrays.copyOf(tokens, 2 * length);
+      predicted = Arrays.copyOf(predicted, 2 * length + 1);
     }
+    tokens[length] = tok;
+    step();
   }
 
   /**
-   * An edge in the chart parser.
-   *
-   * @author Leo Woerteler
-   */
-  public final class Edge implements Iterable<Edge> {
-
-    /** Prime number used as factor in hash-code calculation. */
-    private static final int HASH_CODE_PRIME = 31;
-
-    /** Start position of the edge. */
-    final int start;
-    /** End position of the edge. */
-    final int end;
-    /** position of the dot. */
-    final int dot;
-
-    /** Left hand side. */
-    public final String lhs;
-    /** Right hand side. */
-    public final String[] rhs;
-
-    /** Ancestors of this edge. */
-    private final List<Edge> children;
-
-    /**
-     * Constructor.
-     *
-     * @param s start
-     * @param e end
-     * @param d dot position
-     * @param lh left hand side
-     * @param rh right hand side
-     * @param kids children of this edger
-     */
-    Edge(final int s, final int e, final int d, final String lh,
-        final String[] rh, final List<Edge> kids) {
-      start = s;
-      end = e;
-      dot = d;
-      lhs = lh;
-      rhs = rh;
-      children = kids;
-    }
+   * Removes all tokens of a session from the given position on, together
+   * with all edges ending after it. No edge ending at or before the position
+   * depends on the removed tokens, since sessions do not look ahead.
+   *
+   * @param pos number of tokens to keep
+   */
+  void truncate(final int pos) {
+    status = ParseForest.Status.COMPLETE;
+    if(pos < length) discard(pos);
+  }
 
-    /**
-     * Combining constructor.
-     *
-     * @param a active edge
-     * @param i inactive edge
-     */
-    Edge(final Edge a, final Edge i) {
-      this(a.start, i.end, a.dot + 1, a.lhs, a.rhs.clone(),
-          new ArrayList<Edge>(a.children));
-      children.add(i);
-    }
+  /**
+   * Sets the resource limits for the following tokens of a session.
+   *
+   * @param b budget, {@code null} for no limits
+   */
+  void budget(final ParseBudget b) {
+    budget = b;
+    status = ParseForest.Status.COMPLETE;
+  }
 
-    /**
-     * Checks whether this active edge matches the given inactive edge.
-     *
-     * @param inactive inactive edge
-     * @return result of check
-     */
-    boolean matches(final Edge inactive) {
-      return end == inactive.start && rhs[dot].equals(inactive.lhs);
-    }
+  /**
+   * Removes all edges ending after the given position, including those of a
+   * token whose processing was stopped.
+   *
+   * @param pos number of tokens to keep
+   */
+  private void discard(final int pos) {
+    final int cut = bounds.get(pos);
+    chart.truncate(cut);
+    actives.truncate(cut);
+    inactives.truncate(cut);
+    Arrays.fill(predicted, pos + 1, predicted.length, null);
+    bounds.truncate(pos + 1);
+    processed = cut;
+    sorted = Math.min(sorted, cut);
+    length = pos;
+  }
 
-    /**
-     * Checks whether this edge is still active.
-     *
-     * @return {@code true}, if this edge is active, {@code false} otherwise.
-     */
-    boolean isActive() {
-      return dot < rhs.length;
+  /**
+   * Number of tokens processed so far.
+   *
+   * @return number of tokens
+   */
+  int length() {
+    return length;
+  }
+
+  /**
+   * Processes the next token. All edges created in this step end after it.
+   * If the budget runs out, all of them are removed again.
+   *
+   * @throws ParserException if the token is unknown
+   */
+  private void step() throws ParserException {
+    final int i = length;
+    final int[] lexical = grammar.lexical(grammar.id(tokens[i]));
+    if(lexical.length == 0) {
+      throw new ParserException("Unknown terminal '" + tokens[i] + "'.");
     }
 
-    /**
-     * Checks whether this edge spans over the entire input sequence.
-     *
-     * @return {@code true}, if this edge is overspanning, {@code false}
-     */
-    boolean isOverspanning() {
-      return start == 0 && end == tokens.length;
+    if(inside != null) {
+      pending = new IntList[i + 1];
+      cell = i + 1;
     }
 
-    @Override
-    public boolean equals(final Object obj) {
-      if(!(obj instanceof Edge)) {
-        return false;
+    // initialize with input token
+    for(final int rule : lexical) {
+      if(!earley) {
+        add(i, i + 1, 1, rule, -1, -1, ParserEventListener.Kind.LEXICAL);
+      } else if(isPredicted(grammar.lhs(rule), i)) {
+        add(i, i + 1, 1, rule, -1, -1, ParserEventListener.Kind.SCAN);
       }
-      final Edge o = (Edge) obj;
-      return start == o.start && end == o.end && dot == o.dot
-          && lhs.equals(o.lhs) && Arrays.equals(rhs, o.rhs)
-          && children.equals(o.children);
     }
 
-    @Override
-    public int hashCode() {
-      int res = 0;
-      for(final int i : new int[] { start, end, dot, lhs.hashCode(),
-          Arrays.hashCode(rhs), children.hashCode()}) {
-        res = HASH_CODE_PRIME * res + i;
-      }
-      return res;
+    // all edges created from here on end at the current token
+    if(!process()) {
+      discard(i);
+      return;
     }
+    length++;
+    bounds.add(chart.size());
+  }
 
-    @Override
-    public String toString() {
-      return String.format("(%d, %d, %d, %s, %s)", start, end, dot, lhs,
-          Arrays.toString(rhs));
+  /**
+   * Checks whether the tokens processed so far can be the beginning of an
+   * input with at least one parse tree. This is the case if an edge ending
+   * after the last token has a left-hand side that is expected at its start:
+   * expected symbols are left corners of the rest of an active edge, which
+   * can always be completed, and so on down to the start symbol.
+   *
+   * @return result of the check
+   */
+  boolean isViable() {
+    if(length == 0) return true;
+    for(int e = bounds.get(length - 1); e < chart.size(); e++) {
+      if(isPredicted(grammar.lhs(chart.rule(e)), chart.start(e))) return true;
     }
+    return false;
+  }
 
-    /**
-     * Creates a representation of this subtree in bracketing notation.
-     *
-     * @return representation
-     */
-    public String toLaTeX() {
-      final StringBuilder sb = new StringBuilder();
-      toLaTeX(sb, Collections.singletonList(this));
-      return sb.toString().trim();
+  /**
+   * Creates the parse forest of the tokens processed so far. Like at the end
+   * of a complete parse, the whole chart is passed to the event listener
+   * first, including the edges kept from earlier calls.
+   *
+   * @return parse forest
+   */
+  ParseForest forest() {
+    listChart();
+    return forest(length == 0 ? 0 : bounds.get(length - 1));
+  }
+
+  /**
+   * Creates the parse forest from the filled chart.
+   *
+   * @param from ID of the first edge that may be a root
+   * @return parse forest
+   */
+  private ParseForest forest(final int from) {
+    // roots are ordered by their rule
+    final long[] roots = new long[chart.size() - from];
+    int r = 0;
+    for(int e = from; e < chart.size(); e++) {
+      final int rule = chart.rule(e);
+      if(!chart.isActive(e) && chart.start(e) == 0 && chart.end(e) == length
+          && (start < 0 || grammar.lhs(rule) == start)) {
+        roots[r++] = (long) rule << 32 | e;
+      }
     }
+    Arrays.sort(roots, 0, r);
+    final int[] ids = new int[r];
+    for(int i = 0; i < r; i++) ids[i] = (int) roots[i];
 
-    /**
-     * Recursive {@link #toLaTeX()} helper.
-     *
-     * @param sb string builder for efficiency
-     * @param kids list of children
-     */
-    private void toLaTeX(final StringBuilder sb, final List<Edge> kids) {
-      for(final Edge c : kids) {
-        sb.append(" [.").append(c.lhs);
-        if(!c.children.isEmpty()) {
-          toLaTeX(sb, c.children);
-        } else {
-          for(final String term : c.rhs) {
-            sb.append(" ").append(term);
+    chart.sortLinks(sorted);
+    sorted = chart.size();
+    return new ParseForest(chart, ids, status);
+  }
+
+  /**
+   * Processes all edges on the agenda, unless the budget runs out. If
+   * derivations are pruned, the next cell is committed whenever the agenda
+   * runs empty.
+   *
+   * @return {@code true} if the agenda is empty, {@code false} if the budget
+   *   ran out
+   */
+  private boolean process() {
+    for(int s = cell; s >= 0; s = next(s)) {
+      if(s < cell) commit(s);
+      while(processed < chart.size()) {
+        if(budget != null) {
+          final ParseForest.Status st = budget.check(chart.size(),
+              (processed & CHECK_MASK) == 0);
+          if(st != null) {
+            status = st;
+            if(stopEvents) events.stopped(st);
+            return false;
           }
         }
-        sb.append(" ]");
+        final int e = processed++;
+        if(chart.isActive(e)) {
+          predict(chart.next(e), chart.end(e));
+          fundamentalRule(e);
+        } else {
+          ruleInvocation(e);
+          fundamentalRule(e);
+        }
+        retire(e);
       }
+      if(inside == null) break;
     }
+    return true;
+  }
 
-    /**
-     * Checks whether the edge has real children.
-     * 
-     * @return Whether the edge has real children or just text as children.
-     */
-    public boolean hasRealChildren() {
-      return !children.isEmpty();
+  /**
+   * Returns the start position of the next cell with derivations to commit.
+   *
+   * @param s start position of the last committed cell
+   * @return start position, {@code -1} if there is none
+   */
+  private int next(final int s) {
+    int n = s - 1;
+    while(n >= 0 && pending[n] == null) n--;
+    return n;
+  }
+
+  /**
+   * The fundamental rule of chart parsing generates new edges by combining
+   * fitting active and inactive edges. The given edge is combined with all
+   * retired edges in the index bucket it fits into.
+   *
+   * @param e ID of the edge taken from the agenda
+   */
+  private void fundamentalRule(final int e) {
+    if(chart.isActive(e)) {
+      final IntList ins = inactives.get(chart.end(e), chart.next(e));
+      for(int i = 0; ins != null && i < ins.size(); i++) {
+        final int in = ins.get(i);
+        final int end = chart.end(in), dot = chart.dot(e) + 1;
+        if(fits(end, dot, chart.rule(e))) {
+          add(chart.start(e), end, dot, chart.rule(e), e, in,
+              ParserEventListener.Kind.FUNDAMENTAL);
+        }
+      }
+    } else {
+      final IntList acts = actives.get(chart.start(e),
+          grammar.lhs(chart.rule(e)));
+      for(int i = 0; acts != null && i < acts.size(); i++) {
+        final int act = acts.get(i);
+        final int end = chart.end(e), dot = chart.dot(act) + 1;
+        if(fits(end, dot, chart.rule(act))) {
+          add(chart.start(act), end, dot, chart.rule(act), act, e,
+              ParserEventListener.Kind.FUNDAMENTAL);
+        }
+      }
     }
+  }
 
-    @Override
-    public Iterator<Edge> iterator() {
-      return children.iterator();
+  /**
+   * Checks whether an edge with the given end and dot position can still be
+   * completed: the rest of its rule must fit into the remaining input, and
+   * the symbol after the dot must be able to start with the next token.
+   *
+   * @param end end position
+   * @param dot dot position
+   * @param rule rule ID
+   * @return result of the check
+   */
+  private boolean fits(final int end, final int dot, final int rule) {
+    return lookahead != null ? fits(grammar, lookahead, end, dot, rule)
+        : grammar.minYield(rule, dot) != Integer.MAX_VALUE;
+  }
+
+  /**
+   * Checks whether an edge with the given end and dot position can still be
+   * completed.
+   *
+   * @param g grammar
+   * @param lookahead symbols that can start with the token at each position
+   * @param end end position
+   * @param dot dot position
+   * @param rule rule ID
+   * @return result of the check
+   * @see #fits(int, int, int)
+   */
+  static boolean fits(final Grammar g, final long[][] lookahead,
+      final int end, final int dot, final int rule) {
+    if(dot == g.length(rule)) return true;
+    if(g.minYield(rule, dot) > lookahead.length - end) return false;
+    final int next = g.rhs(rule, dot);
+    return (lookahead[end][next >>> 6] & 1L << next) != 0;
+  }
+
+  /**
+   * Prediction: marks the given symbol as expected at the given position,
+   * together with all its left corners.
+   *
+   * @param sym symbol ID
+   * @param pos chart position
+   */
+  private void predict(final int sym, final int pos) {
+    if(predicted[pos] == null) {
+      predicted[pos] = new long[grammar.symbolCount() + 63 >>> 6];
+    } else if(isPredicted(sym, pos)) {
+      // the left corners of a left corner are already included
+      return;
+    }
+    grammar.leftCorners(sym, predicted[pos]);
+  }
+
+  /**
+   * Checks whether a symbol is expected at the given position.
+   *
+   * @param sym symbol ID
+   * @param pos chart position
+   * @return result of the check
+   */
+  private boolean isPredicted(final int sym, final int pos) {
+    final long[] bits = predicted[pos];
+    return bits != null && (bits[sym >>> 6] & 1L << sym) != 0;
+  }
+
+  /**
+   * Add all the rules of the grammar to the chart that are relevant: Find the
+   * rule with the LHS of edge as the leftmost RHS symbol whose LHS is expected
+   * at the edge's start and whose rest fits into the remaining input.
+   *
+   * <p>Unary rules are not invoked one by one, but as whole chains, and only
+   * on edges that were not derived by a chain themselves. Since no chain
+   * derives a symbol from itself, cycles of unary rules end after one
+   * round.</p>
+   *
+   * @param e ID of the inactive edge taken from the agenda
+   */
+  private void ruleInvocation(final int e) {
+    final int pos = chart.start(e), end = chart.end(e), rl = chart.rule(e);
+    final int lhs = grammar.lhs(rl);
+    for(final int rule : grammar.withLeftmost(lhs)) {
+      if(grammar.length(rule) > 1 && isPredicted(grammar.lhs(rule), pos)
+          && fits(end, 1, rule)) {
+        add(pos, end, 1, rule, -1, e, ParserEventListener.Kind.INVOCATION);
+      }
+    }
+    if(grammar.length(rl) > 1 || chart.links(e) == 0) {
+      for(final int chain : grammar.chains(lhs)) {
+        final int rule = grammar.chainRule(chain);
+        if(isPredicted(grammar.lhs(rule), pos)) {
+          add(pos, end, 1, rule, Chart.chainLink(chain), e,
+              ParserEventListener.Kind.CHAIN);
+        }
+      }
     }
   }
 
@@ -0,0 +1,343 @@
+package de.woerteler.charty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.woerteler.util.IntList;
+
+/**
+ * Fills a chart span length by span length, using several threads. All edges
+ * of a cell are derived from edges of strictly shorter spans, plus rule
+ * invocations on inactive edges of the cell itself, so all cells of the same
+ * span length can be filled independently. Every cell collects its edges in
+ * a private buffer; the buffers are then merged into the chart in the order
+ * of their start positions, so the resulting chart does not depend on the
+ * scheduling of the threads.
+ *
+ * <p>The cells are filled by threads of a pool shared by all parsers, with one
+ * thread per processor, so parsing many inputs at once does not multiply the
+ * number of threads. A parser hands out the cells of a span length one by one
+ * to at most as many tasks as it may use threads.</p>
+ *
+ * <p>The budget is checked before every cell. If it runs out, the chart keeps
+ * the span lengths that were completely filled.</p>
+ *
+ * @author Leo Woerteler
+ */
+final class DiagonalParser {
+
+  /** Grammar. */
+  private final Grammar grammar;
+  /** The chart. */
+  private final Chart chart;
+  /** Tokens to parse. */
+  private final String[] tokens;
+  /** Symbols that can start with the token at each position. */
+  private final long[][] lookahead;
+  /** Listener for added edges, {@code null} if there is none. */
+  private final ParserEventListener listener;
+  /** Number of threads. */
+  private final int threads;
+  /** Resource limits, {@code null} if there are none. */
+  private final ParseBudget budget;
+  /** Reason for stopping, {@code null} while the budget lasts. */
+  private volatile ParseForest.Status stopped;
+
+  /** Active edges, indexed by cell. */
+  private final IntList[] actives;
+  /** Inactive edges, indexed by cell and left-hand side. */
+  private final EdgeIndex inactives = new EdgeIndex();
+
+  /**
+   * Constructor.
+   *
+   * @param c empty chart
+   * @param tok tokens to parse, all of them known to the grammar
+   * @param la symbols that can start with the token at each position
+   * @param list listener for added edges, may be {@code null}
+   * @param n number of threads
+   * @param b resource limits, {@code null} if there are none
+   */
+  DiagonalParser(final Chart c, final String[] tok, final long[][] la,
+      final ParserEventListener list, final int n, final ParseBudget b) {
+    grammar = c.grammar;
+    chart = c;
+    tokens = tok;
+    lookahead = la;
+    listener = list;
+    threads = n;
+    budget = b;
+    actives = new IntList[(tok.length + 1) * (tok.length + 1)];
+  }
+
+  /**
+   * Fills the chart.
+   *
+   * @return outcome of the parse
+   * @throws ParserException if the thread was interrupted
+   */
+  ParseForest.Status run() throws ParserException {
+    final int n = tokens.length;
+    try {
+      for(int len = 1; len <= n; len++) {
+        final int span = len, cells = n - len + 1;
+        final Cell[] done = new Cell[cells];
+        final AtomicInteger next = new AtomicInteger();
+        final Callable<Void> task = new Callable<Void>() {
+          @Override
+          public Void call() {
+            for(int i; !exhausted() && (i = next.getAndIncrement()) < cells;) {
+              done[i] = fill(i, i + span);
+            }
+            return null;
+          }
+        };
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for(int t = Math.min(threads, cells); t > 0; t--) tasks.add(task);
+        for(final Future<Void> f : Pool.POOL.invokeAll(tasks)) f.get();
+        if(stopped != null) return stopped;
+        for(final Cell c : done) merge(c);
+      }
+      return ParseForest.Status.COMPLETE;
+    } catch(final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ParserException("Parsing was interrupted.");
+    } catch(final ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if(cause instanceof Error) throw (Error) cause;
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Checks the budget, and remembers why it ran out if it did.
+   *
+   * @return {@code true} if the budget ran out, {@code false} otherwise
+   */
+  private boolean exhausted() {
+    if(stopped == null && budget != null) {
+      final ParseForest.Status st = budget.check(chart.size(), true);
+      if(st != null) stopped = st;
+    }
+    return stopped != null;
+  }
+
+  /**
+   * Computes the edges of a cell. Only reads the chart, which is not modified
+   * while cells are being filled.
+   *
+   * @param start start position
+   * @param end end position
+   * @return buffered edges of the cell
+   */
+  private Cell fill(final int start, final int end) {
+    final Cell cell = new Cell(start, end);
+    if(end - start == 1) {
+      for(final int rule : grammar.lexical(grammar.id(tokens[start]))) {
+        cell.add(1, rule, -1, -1, ParserEventListener.Kind.LEXICAL);
+      }
+    }
+    final int lexical = cell.rules.size();
+
+    // fundamental rule on edges of shorter spans
+    for(int k = start + 1; k < end; k++) {
+      final IntList acts = actives[cell(start, k)];
+      for(int a = 0; acts != null && a < acts.size(); a++) {
+        final int act = acts.get(a);
+        final IntList ins = inactives.get(cell(k, end), chart.next(act));
+        final int dot = chart.dot(act) + 1, rule = chart.rule(act);
+        if(ins == null
+            || !ChartParser.fits(grammar, lookahead, end, dot, rule)) {
+          continue;
+        }
+        for(int i = 0; i < ins.size(); i++) {
+          cell.add(dot, rule, act, ins.get(i),
+              ParserEventListener.Kind.FUNDAMENTAL);
+        }
+      }
+    }
+
+    // rule invocation on the inactive edges of this cell, unary chains only
+    // on those not derived by a chain
+    for(int e = 0; e < cell.rules.size(); e++) {
+      final int r = cell.rules.get(e);
+      if(cell.dots.get(e) < grammar.length(r)) continue;
+      for(final int rule : grammar.withLeftmost(grammar.lhs(r))) {
+        if(grammar.length(rule) > 1
+            && ChartParser.fits(grammar, lookahead, end, 1, rule)) {
+          cell.add(1, rule, -1, Cell.local(e),
+              ParserEventListener.Kind.INVOCATION);
+        }
+      }
+      if(grammar.length(r) > 1 || e < lexical) {
+        for(final int chain : grammar.chains(grammar.lhs(r))) {
+          cell.add(1, grammar.chainRule(chain), Chart.chainLink(chain),
+              Cell.local(e), ParserEventListener.Kind.CHAIN);
+        }
+      }
+    }
+    return cell;
+  }
+
+  /**
+   * Adds the buffered edges of a cell to the chart and the indexes.
+   *
+   * @param cell buffered cell
+   */
+  private void merge(final Cell cell) {
+    final int size = cell.rules.size();
+    final int[] ids = new int[size];
+    for(int e = 0; e < size; e++) {
+      ids[e] = chart.add(cell.start, cell.end, cell.dots.get(e),
+          cell.rules.get(e));
+      if(listener != null) {
+        listener.edgeAdded(cell.kinds.get(e), ids[e], cell.start, cell.end,
+            cell.dots.get(e), cell.rules.get(e));
+      }
+    }
+    for(int l = 0; l < cell.links.size(); l += 3) {
+      // predecessors are never buffered, but may be encoded chains
+      chart.link(ids[cell.links.get(l)], cell.links.get(l + 1),
+          cell.global(cell.links.get(l + 2), ids));
+    }
+
+    final int c = cell(cell.start, cell.end);
+    for(final int e : ids) {
+      if(chart.isActive(e)) {
+        if(actives[c] == null) actives[c] = new IntList(4);
+        actives[c].add(e);
+      } else {
+        inactives.add(c, grammar.lhs(chart.rule(e)), e);
+      }
+    }
+  }
+
+  /**
+   * Returns the index of a cell.
+   *
+   * @param start start position
+   * @param end end position
+   * @return cell index
+   */
+  private int cell(final int start, final int end) {
+    return start * (tokens.length + 1) + end;
+  }
+
+  /**
+   * Edges of a single cell that have not been added to the chart yet. They
+   * are referenced by their position in the buffer, encoded as a value
+   * below {@code -1} to tell them apart from the IDs of edges in the chart.
+   *
+   * @author Leo Woerteler
+   */
+  private static final class Cell {
+    /** Start position. */
+    final int start;
+    /** End position. */
+    final int end;
+    /** Dot positions of the edges. */
+    final IntList dots = new IntList();
+    /** Rules of the edges. */
+    final IntList rules = new IntList();
+    /** Parser steps creating the edges. */
+    final List<ParserEventListener.Kind> kinds =
+        new ArrayList<ParserEventListener.Kind>();
+    /** Backpointers as (edge, predecessor, child) triples. */
+    final IntList links = new IntList();
+    /** Positions of the edges in the buffer, by dot position and rule. */
+    private final Map<Long, Integer> positions = new HashMap<Long, Integer>();
+
+    /**
+     * Constructor.
+     *
+     * @param s start position
+     * @param e end position
+     */
+    Cell(final int s, final int e) {
+      start = s;
+      end = e;
+    }
+
+    /**
+     * Adds an edge to the buffer, or a derivation to an existing one.
+     *
+     * @param dot dot position
+     * @param rule rule ID
+     * @param pred predecessor, {@code -1} if there is none
+     * @param child consumed inactive edge, {@code -1} if there is none
+     * @param kind parser step creating the edge
+     */
+    void add(final int dot, final int rule, final int pred, final int child,
+        final ParserEventListener.Kind kind) {
+      final Long key = (long) dot << 32 | rule;
+      Integer pos = positions.get(key);
+      if(pos == null) {
+        pos = rules.size();
+        positions.put(key, pos);
+        dots.add(dot);
+        rules.add(rule);
+        kinds.add(kind);
+      }
+      if(child != -1) {
+        links.add(pos);
+        links.add(pred);
+        links.add(child);
+      }
+    }
+
+    /**
+     * Encodes the position of an edge in the buffer.
+     *
+     * @param pos position
+     * @return encoded reference
+     */
+    static int local(final int pos) {
+      return -2 - pos;
+    }
+
+    /**
+     * Resolves a reference to an edge after merging.
+     *
+     * @param ref edge ID, encoded position or {@code -1}
+     * @param ids IDs of the buffered edges in the chart
+     * @return edge ID or {@code -1}
+     */
+    int global(final int ref, final int[] ids) {
+      return ref < -1 ? ids[-2 - ref] : ref;
+    }
+  }
+
+  /**
+   * Holder of the thread pool shared by all parsers, created on first use.
+   *
+   * @author Leo Woerteler
+   */
+  private static final class Pool {
+    /** Worker threads, one per processor. */
+    static final ExecutorService POOL = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+          @Override
+          public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "DiagonalParser");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+
+    /** Hidden default constructor. */
+    private Pool() {
+      // void
+    }
+  }
+
+}
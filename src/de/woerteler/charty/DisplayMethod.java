@@ -1,9 +1,7 @@
 package de.woerteler.charty;
 
-import de.woerteler.charty.ChartParser.Edge;
-
 /**
- * Defines a callback for different {@link Edge} drawing methods.
+ * Defines a callback for different {@link ParseTree} drawing methods.
  * 
  * @author Joschi <josua.krause@googlemail.com>
  */
@@ -12,11 +10,11 @@ public interface DisplayMethod {
   /**
    * Returns a graphical representation drawer of the given syntax tree.
    * 
-   * @param e The root node/edge of the syntax tree.
+   * @param tree The syntax tree.
    * @return A {@link Displayer} to draw the syntax tree.
    * @throws Exception If an exception occurs during the generation of the
    *           drawer.
    */
-  Displayer getDisplayer(Edge e) throws Exception;
+  Displayer getDisplayer(ParseTree tree) throws Exception;
 
 }
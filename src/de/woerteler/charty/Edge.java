@@ -0,0 +1,143 @@
+package de.woerteler.charty;
+
+import java.util.Arrays;
+
+/**
+ * An edge in the {@link ObjectChart}. Edges are packed: an edge is identified
+ * by its span, the position of its dot and its rule, and stores every way in
+ * which it was derived as a backpointer pair into the chart. The identifying
+ * fields are immutable integers, so the hash code is computed once on
+ * construction.
+ *
+ * @author Leo Woerteler
+ */
+final class Edge {
+
+  /** Backpointers of edges without derivations. */
+  private static final int[] NO_LINKS = { };
+
+  /** Position of this edge in the chart. */
+  final int id;
+  /** Start position of the edge. */
+  final int start;
+  /** End position of the edge. */
+  final int end;
+  /** position of the dot. */
+  final int dot;
+  /** ID of the rule. */
+  final int rule;
+  /** Symbol after the dot, {@code -1} if the edge is inactive. */
+  final int next;
+
+  /**
+   * Backpointers, stored as pairs of the predecessor edge with the dot one
+   * position further to the left ({@code -1} if this edge was created by rule
+   * invocation) and the inactive edge that was consumed.
+   */
+  private int[] links = NO_LINKS;
+  /** Number of backpointer pairs. */
+  private int size;
+  /** Cached hash code. */
+  private final int hash;
+
+  /**
+   * Constructor.
+   *
+   * @param i position in the chart
+   * @param s start
+   * @param e end
+   * @param d dot position
+   * @param r rule ID
+   * @param n symbol after the dot, {@code -1} if the edge is inactive
+   */
+  Edge(final int i, final int s, final int e, final int d, final int r,
+      final int n) {
+    id = i;
+    start = s;
+    end = e;
+    dot = d;
+    rule = r;
+    next = n;
+    hash = Chart.hash(s, e, d, r);
+  }
+
+  /**
+   * Adds an alternative derivation of this edge.
+   *
+   * @param pred predecessor edge, or {@code -1}
+   * @param child consumed inactive edge
+   */
+  void link(final int pred, final int child) {
+    if(2 * size == links.length) links = Arrays.copyOf(links, Math.max(2, 4 * size));
+    links[2 * size] = pred;
+    links[2 * size + 1] = child;
+    size++;
+  }
+
+  /**
+   * Replaces an alternative derivation of this edge.
+   *
+   * @param l derivation
+   * @param pred predecessor edge, or {@code -1}
+   * @param child consumed inactive edge
+   */
+  void link(final int l, final int pred, final int child) {
+    links[2 * l] = pred;
+    links[2 * l + 1] = child;
+  }
+
+  /**
+   * Number of alternative derivations of this edge. Edges read directly from
+   * the input have none.
+   *
+   * @return number of backpointer pairs
+   */
+  int links() {
+    return size;
+  }
+
+  /**
+   * Returns the predecessor of the given derivation.
+   *
+   * @param l derivation
+   * @return id of the predecessor edge, or {@code -1}
+   */
+  int pred(final int l) {
+    return links[2 * l];
+  }
+
+  /**
+   * Returns the consumed inactive edge of the given derivation.
+   *
+   * @param l derivation
+   * @return id of the child edge
+   */
+  int child(final int l) {
+    return links[2 * l + 1];
+  }
+
+  /**
+   * Checks whether this edge is still active.
+   *
+   * @return {@code true}, if this edge is active, {@code false} otherwise.
+   */
+  boolean isActive() {
+    return next >= 0;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if(!(obj instanceof Edge)) {
+      return false;
+    }
+    final Edge o = (Edge) obj;
+    return hash == o.hash && start == o.start && end == o.end && dot == o.dot
+        && rule == o.rule;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+}
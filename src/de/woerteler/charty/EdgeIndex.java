@@ -0,0 +1,124 @@
+package de.woerteler.charty;
+
+import java.util.Arrays;
+
+import de.woerteler.util.IntList;
+
+/**
+ * Index from a chart position and a symbol to the IDs of the edges stored
+ * under this key. The keys are kept in an open-addressing hash table of
+ * primitive longs, so lookups do not allocate.
+ *
+ * @author Leo Woerteler
+ */
+final class EdgeIndex {
+
+  /** Initial capacity, must be a power of two. */
+  private static final int CAP = 64;
+  /** Marker for empty slots. */
+  private static final long EMPTY = -1;
+
+  /** Keys of the hash table. */
+  private long[] keys = new long[CAP];
+  /** Edge lists, parallel to {@link #keys}. */
+  private IntList[] lists = new IntList[CAP];
+  /** Number of keys. */
+  private int size;
+
+  /** Constructor. */
+  EdgeIndex() {
+    Arrays.fill(keys, EMPTY);
+  }
+
+  /**
+   * Adds an edge to the index.
+   *
+   * @param pos chart position
+   * @param sym symbol ID
+   * @param id edge ID
+   */
+  void add(final int pos, final int sym, final int id) {
+    final long key = key(pos, sym);
+    int slot = slot(keys, key);
+    if(keys[slot] == EMPTY) {
+      if(size + 1 > keys.length >>> 1) {
+        rehash();
+        slot = slot(keys, key);
+      }
+      keys[slot] = key;
+      lists[slot] = new IntList(2);
+      size++;
+    }
+    lists[slot].add(id);
+  }
+
+  /**
+   * Returns the IDs of all edges stored under the given key.
+   *
+   * @param pos chart position
+   * @param sym symbol ID
+   * @return list of edge IDs, {@code null} if there are none; it must not be
+   *   modified and is only valid until the next insertion
+   */
+  IntList get(final int pos, final int sym) {
+    return lists[slot(keys, key(pos, sym))];
+  }
+
+  /**
+   * Removes all edges with an ID of at least the given one. Edges are added
+   * in ascending order of their IDs, so they are at the end of their lists.
+   *
+   * @param n smallest ID to remove
+   */
+  void truncate(final int n) {
+    for(final IntList l : lists) {
+      if(l == null) continue;
+      int sz = l.size();
+      while(sz > 0 && l.get(sz - 1) >= n) sz--;
+      l.truncate(sz);
+    }
+  }
+
+  /** Doubles the size of the hash table. */
+  private void rehash() {
+    final long[] ks = new long[keys.length << 1];
+    final IntList[] ls = new IntList[ks.length];
+    Arrays.fill(ks, EMPTY);
+    for(int i = 0; i < keys.length; i++) {
+      if(keys[i] != EMPTY) {
+        final int s = slot(ks, keys[i]);
+        ks[s] = keys[i];
+        ls[s] = lists[i];
+      }
+    }
+    keys = ks;
+    lists = ls;
+  }
+
+  /**
+   * Finds the slot of a key, or the empty slot where it would be inserted.
+   *
+   * @param ks hash table keys
+   * @param key key
+   * @return slot
+   */
+  private static int slot(final long[] ks, final long key) {
+    final int mask = ks.length - 1;
+    final long h = key * 0x9E3779B97F4A7C15L;
+    int s = (int) (h ^ h >>> 32) & mask;
+    while(ks[s] != EMPTY && ks[s] != key) s = s + 1 & mask;
+    return s;
+  }
+
+  /**
+   * Combines a position and a symbol into a key.
+   *
+   * @param pos chart position
+   * @param sym symbol ID
+   * @return key
+   */
+  private static long key(final int pos, final int sym) {
+    return (long) pos << 32 | sym;
+  }
+
+}
@@ -0,0 +1,162 @@
+package de.woerteler.charty;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily enumerates the parse trees of a packed forest in canonical order. The
+ * iterator keeps one cursor per node of the current tree and advances them
+ * like an odometer, so only the current tree is held in memory. Subtrees
+ * whose cursors did not move are shared with the previous tree.
+ *
+ * @author Leo Woerteler
+ */
+final class ForestIterator implements Iterator<ParseTree> {
+
+  /** Grammar. */
+  private final Grammar grammar;
+  /** The chart. */
+  private final Chart chart;
+  /** IDs of the root edges. */
+  private final int[] roots;
+
+  /** Index of the current root. */
+  private int root;
+  /** Cursor of the current root, {@code null} if exhausted. */
+  private Cursor cursor;
+  /** The next tree to return, {@code null} if not computed yet. */
+  private ParseTree next;
+
+  /**
+   * Constructor.
+   *
+   * @param c the chart
+   * @param rts IDs of the root edges
+   */
+  ForestIterator(final Chart c, final int[] rts) {
+    grammar = c.grammar;
+    chart = c;
+    roots = rts;
+    if(rts.length > 0) {
+      cursor = new Cursor(rts[0]);
+      next = cursor.tree();
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if(next == null && cursor != null) {
+      if(!cursor.next()) {
+        cursor = ++root < roots.length ? new Cursor(roots[root]) : null;
+      }
+      if(cursor != null) next = cursor.tree();
+    }
+    return next != null;
+  }
+
+  @Override
+  public ParseTree next() {
+    if(!hasNext()) throw new NoSuchElementException();
+    final ParseTree t = next;
+    next = null;
+    return t;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Cursor pointing to one derivation of an edge.
+   *
+   * @author Leo Woerteler
+   */
+  private final class Cursor {
+    /** ID of the edge. */
+    private final int edge;
+    /** Number of derivations of the edge. */
+    private final int links;
+    /** Current derivation of the edge. */
+    private int link;
+    /** Cursor of the predecessor edge, {@code null} if there is none. */
+    private Cursor pred;
+    /** Cursor of the consumed inactive edge. */
+    private Cursor child;
+    /** Tree of the current derivation, {@code null} if not built yet. */
+    private ParseTree tree;
+
+    /**
+     * Creates a cursor pointing to the first derivation of the given edge.
+     *
+     * @param id ID of the edge
+     */
+    Cursor(final int id) {
+      edge = id;
+      links = chart.links(id);
+      init();
+    }
+
+    /** Initializes the sub-cursors of the current derivation. */
+    private void init() {
+      if(links > 0) {
+        final int p = chart.pred(edge, link);
+        pred = p < 0 ? null : new Cursor(p);
+        child = new Cursor(chart.child(edge, link));
+      }
+    }
+
+    /**
+     * Advances this cursor to the next derivation.
+     *
+     * @return {@code false} if all derivations have been visited
+     */
+    boolean next() {
+      if(links == 0) return false;
+      if(!child.next()) {
+        if(pred != null && pred.next()) {
+          child = new Cursor(chart.child(edge, link));
+        } else if(++link < links) {
+          init();
+        } else {
+          return false;
+        }
+      }
+      tree = null;
+      return true;
+    }
+
+    /**
+     * Returns the tree of the current derivation of this inactive edge.
+     *
+     * @return parse tree
+     */
+    ParseTree tree() {
+      if(tree == null) {
+        final int rule = chart.rule(edge);
+        if(links == 0) {
+          tree = ParseTree.lexical(grammar, rule);
+        } else {
+          final List<ParseTree> kids =
+              new ArrayList<ParseTree>(grammar.length(rule));
+          children(kids);
+          tree = ParseTree.inner(grammar, rule, kids);
+        }
+      }
+      return tree;
+    }
+
+    /**
+     * Collects the subtrees left of the dot for the current derivation.
+     *
+     * @param kids list to add the subtrees to
+     */
+    private void children(final List<ParseTree> kids) {
+      if(pred != null) pred.children(kids);
+      kids.add(ParseTree.chain(grammar, chart.pred(edge, link), child.tree()));
+    }
+  }
+
+}
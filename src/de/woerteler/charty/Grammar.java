@@ -1,18 +1,46 @@
 package de.woerteler.charty;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import de.woerteler.util.IntList;
+
 /**
- * This class represents a context-free grammar.
+ * This class represents a context-free grammar. The grammar is compiled on
+ * construction: every symbol is interned to an integer ID, and the rules are
+ * stored in flat integer arrays, indexed by their leftmost right-hand side
+ * symbol. The parser works on these IDs only.
+ *
+ * <p>A production may end with a weight, a number with a decimal point in the
+ * range {@code (0, 1]} such as {@code NP -> Art N 0.4} or
+ * {@code NP -> N 1.0e-3}. The decimal point tells weights from symbols: in
+ * {@code NP -> room 101}, {@code 101} is a terminal. Any other number at the
+ * end of a right-hand side with more than one token, like {@code 1e-3} or
+ * {@code 1.5}, is rejected. Productions without weight have a weight of
+ * {@code 1}.</p>
+ *
+ * <p>Chains of unary rules are precomputed as well. A chain never derives a
+ * symbol from itself, so cycles of unary rules such as {@code A -> B} and
+ * {@code B -> A} do not lead to infinitely many parse trees.</p>
+ *
+ * <p>A grammar is immutable after construction, so a single instance can be
+ * shared by any number of threads parsing at the same time.</p>
  *
  * @author Leo Woerteler
  */
@@ -30,14 +58,61 @@ public final class Grammar {
     }
   };
 
-  /** Production map. */
-  private final HashMap<String, TreeSet<String[]>> productions;
+  /** Empty rule list. */
+  private static final int[] NO_RULES = { };
 
-  /** Map for lookup of productions . */
-  private final Map<String, Set<String>> leftmost;
+  /** Magic number of compiled grammar files. */
+  private static final int MAGIC = 0x43484752;
+  /** Version of the compiled grammar file format. */
+  private static final int VERSION = 4;
+
+  /** Symbol IDs by name. */
+  private final Lexicon lexicon;
+
+  /** Left-hand side of every rule. */
+  private final int[] ruleLhs;
+  /** Offsets of the rules' right-hand sides in {@link #ruleRhs}. */
+  private final int[] ruleOffsets;
+  /** Right-hand sides of all rules, concatenated. */
+  private final int[] ruleRhs;
+
+  /** IDs of the rules starting with a symbol, indexed by the symbol's ID. */
+  private final int[][] leftmost;
+  /** IDs of the rules with a symbol as single RHS, indexed by the symbol's ID. */
+  private final int[][] lexical;
+  /**
+   * Reflexive-transitive left-corner relation as bitsets, indexed by symbol,
+   * {@code null} for symbols without rules.
+   */
+  private final long[][] leftCorners;
+  /**
+   * Symbols that have a symbol as left corner, as bitsets, indexed by symbol;
+   * only present for the left-hand sides of lexical rules.
+   */
+  private final long[][] leftCornerOf;
+  /**
+   * Minimum number of tokens derived by the right-hand side symbols of a rule
+   * from each position on, parallel to {@link #ruleRhs}.
+   */
+  private final int[] ruleYield;
+  /**
+   * Cost of every rule, the negative natural logarithm of its weight, so that
+   * the cost of a derivation is the sum of the costs of its rules.
+   */
+  private final double[] ruleCosts;
+  /** Flag for grammars with at least one weighted rule. */
+  private final boolean weighted;
+  /** Last rule of every unary chain. */
+  private final int[] chainRules;
+  /** Chain below the last rule of every unary chain, {@code -1} if none. */
+  private final int[] chainParents;
+  /** Unary chains starting at a symbol, indexed by the symbol's ID. */
+  private final int[][] chains;
+  /** Flag for grammars with a cycle of unary rules. */
+  private final boolean cyclic;
 
-  /** Set of LHS with a single token as RHS. */
-  private final Set<String> singletons = new HashSet<String>();
+  /** Binarized grammar for recognition, {@code null} until requested. */
+  private Recognizer recognizer;
 
   /**
    * Constructor.
@@ -48,34 +123,471 @@ public final class Grammar {
    *             if the definition can't be read
    */
   public Grammar(final Reader in) throws GrammarSyntaxException {
+    this(GrammarLoader.load(in));
+  }
 
-    productions = new HashMap<String, TreeSet<String[]>>();
-    leftmost = new HashMap<String, Set<String>>();
+  /**
+   * Constructor taking the split productions.
+   *
+   * @param prods productions as left-hand side, arrow and right-hand side
+   * @throws GrammarSyntaxException if there are no productions
+   */
+  Grammar(final List<String[]> prods) throws GrammarSyntaxException {
+    this(GrammarLoader.of(prods));
+  }
 
-    final Scanner sc = new Scanner(in).useDelimiter("\\s*[\r\n]+\\s*");
-    while (sc.hasNext()) {
-      final String line = sc.next().trim();
-      if (!line.startsWith("#")) {
+  /**
+   * Constructor taking the productions collected by a loader.
+   *
+   * @param ld loader
+   * @throws GrammarSyntaxException if there are no productions
+   */
+  private Grammar(final GrammarLoader ld) throws GrammarSyntaxException {
+    if(ld.lhss.size() == 0) throw new GrammarSyntaxException(
+        "There must be at least one"
+          + " production.");
 
-        final String[] parts = line.split("\\s+");
-        if(parts.length < 2 || !"->".equals(parts[1])) throw new GrammarSyntaxException(
-            "Can't understand " +
-                "production '" + line + "'.");
+    lexicon = new Lexicon(ld.symbols());
+    ruleLhs = ld.lhss.toArray();
+    ruleOffsets = ld.offsets.toArray();
+    ruleRhs = ld.rhss.toArray();
+    leftmost = index(false);
+    lexical = index(true);
+    ruleYield = ruleYield();
+    ruleCosts = ld.costs();
+    weighted = weighted(ruleCosts);
+    final IntList cr = new IntList(), cp = new IntList();
+    chains = chains(cr, cp);
+    chainRules = cr.toArray();
+    chainParents = cp.toArray();
+    cyclic = cyclic();
+    leftCorners = leftCorners();
+    leftCornerOf = leftCornerOf();
+  }
 
-        final String lhs = parts[0];
-        final String[] rhs = Arrays.copyOfRange(parts, 2, parts.length);
-        if (rhs.length == 0) throw new GrammarSyntaxException("Right hand side missing"
-            + " in '" + line + "'.");
+  /**
+   * Constructor taking all tables of a compiled grammar.
+   *
+   * @param names symbol IDs by name
+   * @param lhs left-hand sides of the rules
+   * @param offs offsets of the rules' right-hand sides
+   * @param rhs right-hand sides
+   * @param lm rules by leftmost symbol
+   * @param lex rules by single right-hand side symbol
+   * @param yield minimum yields
+   * @param costs rule costs
+   * @param cr last rules of the unary chains
+   * @param cp parents of the unary chains
+   * @param ch unary chains by starting symbol
+   * @param lc left corners
+   * @param lcOf transposed left corners
+   */
+  private Grammar(final Lexicon names, final int[] lhs, final int[] offs,
+      final int[] rhs, final int[][] lm, final int[][] lex, final int[] yield,
+      final double[] costs, final int[] cr, final int[] cp, final int[][] ch,
+      final long[][] lc, final long[][] lcOf) {
+    lexicon = names;
+    ruleLhs = lhs;
+    ruleOffsets = offs;
+    ruleRhs = rhs;
+    leftmost = lm;
+    lexical = lex;
+    ruleYield = yield;
+    ruleCosts = costs;
+    weighted = weighted(costs);
+    chainRules = cr;
+    chainParents = cp;
+    chains = ch;
+    cyclic = cyclic();
+    leftCorners = lc;
+    leftCornerOf = lcOf;
+  }
 
-        if(!addProduction(lhs, rhs)) throw new GrammarSyntaxException("Production '"
-            + line
-            + "' is declared more than once.");
+  /**
+   * Loads a grammar that was {@link #save(File) saved} in the binary format.
+   * The file is mapped into memory and all tables are copied from it in bulk,
+   * so nothing needs to be computed and no objects are created per rule.
+   *
+   * @param file file to load
+   * @return the grammar
+   * @throws IOException if the file can't be read or is not a compiled grammar
+   */
+  public static Grammar load(final File file) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel ch = raf.getChannel();
+      final MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+          ch.size());
+      if(buf.remaining() < 8 || buf.getInt() != MAGIC) {
+        throw new IOException("Not a compiled grammar: " + file);
       }
+      final int version = buf.getInt();
+      if(version != VERSION) {
+        throw new IOException("Unsupported grammar version " + version + ": "
+            + file);
+      }
+      final int rules = buf.getInt();
+      final Lexicon names = Lexicon.read(buf);
+      final int n = names.size();
+
+      final int[] lhs = ints(buf, rules);
+      final int[] offs = ints(buf, rules + 1);
+      final int[] rhs = ints(buf, offs[rules]);
+      final int[] yield = ints(buf, offs[rules]);
+      final double[] costs = new double[rules];
+      buf.asDoubleBuffer().get(costs);
+      buf.position(buf.position() + 8 * rules);
+      final int[][] lm = index(buf, n);
+      final int[][] lex = index(buf, n);
+      final int count = buf.getInt();
+      final int[] cr = ints(buf, count);
+      final int[] cp = ints(buf, count);
+      final int[][] chs = index(buf, n);
+      final long[][] lc = bitsets(buf, n);
+      final long[][] lcOf = bitsets(buf, n);
+      return new Grammar(names, lhs, offs, rhs, lm, lex, yield, costs, cr, cp,
+          chs, lc, lcOf);
+    } catch(final BufferUnderflowException ex) {
+      throw new IOException("Truncated grammar file: " + file);
+    } finally {
+      raf.close();
     }
+  }
 
-    if(productions.isEmpty()) throw new GrammarSyntaxException(
-        "There must be at least one"
-          + " production.");
+  /**
+   * Saves this grammar in a binary format that can be {@link #load(File)
+   * loaded} without compiling it again. The file contains the symbol table,
+   * the rules and all precomputed indexes.
+   *
+   * @param file file to write to
+   * @throws IOException if the file can't be written
+   */
+  public void save(final File file) throws IOException {
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(ruleLhs.length);
+      lexicon.write(out);
+
+      for(final int l : ruleLhs) out.writeInt(l);
+      for(final int o : ruleOffsets) out.writeInt(o);
+      for(final int r : ruleRhs) out.writeInt(r);
+      for(final int y : ruleYield) out.writeInt(y);
+      for(final double c : ruleCosts) out.writeDouble(c);
+      write(out, leftmost);
+      write(out, lexical);
+      out.writeInt(chainRules.length);
+      for(final int r : chainRules) out.writeInt(r);
+      for(final int p : chainParents) out.writeInt(p);
+      write(out, chains);
+      write(out, leftCorners);
+      write(out, leftCornerOf);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes an index from symbols to rules, as offsets followed by the rules.
+   *
+   * @param out output
+   * @param idx index
+   * @throws IOException I/O exception
+   */
+  private static void write(final DataOutputStream out, final int[][] idx)
+      throws IOException {
+    int off = 0;
+    out.writeInt(off);
+    for(final int[] rules : idx) {
+      off += rules.length;
+      out.writeInt(off);
+    }
+    for(final int[] rules : idx) {
+      for(final int r : rules) out.writeInt(r);
+    }
+  }
+
+  /**
+   * Writes bitsets indexed by symbol, as a presence flag per symbol followed
+   * by the present bitsets.
+   *
+   * @param out output
+   * @param sets bitsets, may contain {@code null}
+   * @throws IOException I/O exception
+   */
+  private static void write(final DataOutputStream out, final long[][] sets)
+      throws IOException {
+    for(final long[] set : sets) out.writeByte(set == null ? 0 : 1);
+    for(final long[] set : sets) {
+      if(set != null) for(final long w : set) out.writeLong(w);
+    }
+  }
+
+  /**
+   * Reads integers from a buffer.
+   *
+   * @param buf buffer
+   * @param n number of integers
+   * @return integers
+   */
+  static int[] ints(final ByteBuffer buf, final int n) {
+    final int[] arr = new int[n];
+    buf.asIntBuffer().get(arr);
+    buf.position(buf.position() + 4 * n);
+    return arr;
+  }
+
+  /**
+   * Reads an index from symbols to rules written by
+   * {@link #write(DataOutputStream, int[][])}.
+   *
+   * @param buf buffer
+   * @param n number of symbols
+   * @return index
+   */
+  private static int[][] index(final ByteBuffer buf, final int n) {
+    final int[] offs = ints(buf, n + 1);
+    final int[] all = ints(buf, offs[n]);
+    final int[][] idx = new int[n][];
+    for(int s = 0; s < n; s++) {
+      idx[s] = offs[s] == offs[s + 1] ? NO_RULES
+          : Arrays.copyOfRange(all, offs[s], offs[s + 1]);
+    }
+    return idx;
+  }
+
+  /**
+   * Reads bitsets written by {@link #write(DataOutputStream, long[][])}.
+   *
+   * @param buf buffer
+   * @param n number of symbols
+   * @return bitsets
+   */
+  private static long[][] bitsets(final ByteBuffer buf, final int n) {
+    final byte[] present = new byte[n];
+    buf.get(present);
+    final int words = n + 63 >>> 6;
+    final long[][] sets = new long[n][];
+    for(int s = 0; s < n; s++) {
+      if(present[s] != 0) {
+        sets[s] = new long[words];
+        buf.asLongBuffer().get(sets[s]);
+        buf.position(buf.position() + 8 * words);
+      }
+    }
+    return sets;
+  }
+
+  /**
+   * Checks whether any rule has a weight other than {@code 1}.
+   *
+   * @param costs rule costs
+   * @return result of check
+   */
+  private static boolean weighted(final double[] costs) {
+    for(final double c : costs) if(c != 0) return true;
+    return false;
+  }
+
+  /**
+   * Creates an index from symbols to the rules starting with them.
+   *
+   * @param single only index rules with a single RHS symbol
+   * @return the index
+   */
+  private int[][] index(final boolean single) {
+    final int[] sizes = new int[symbolCount()];
+    for(int r = 0; r < ruleLhs.length; r++) {
+      if(!single || length(r) == 1) sizes[rhs(r, 0)]++;
+    }
+    final int[][] idx = new int[symbolCount()][];
+    for(int s = 0; s < idx.length; s++) {
+      idx[s] = sizes[s] == 0 ? NO_RULES : new int[sizes[s]];
+      sizes[s] = 0;
+    }
+    for(int r = 0; r < ruleLhs.length; r++) {
+      if(!single || length(r) == 1) {
+        final int s = rhs(r, 0);
+        idx[s][sizes[s]++] = r;
+      }
+    }
+    return idx;
+  }
+
+  /**
+   * Enumerates the unary chains starting at every symbol that has rules. A
+   * chain is a sequence of unary rules, each deriving the left-hand side of
+   * the previous one, in which no symbol occurs twice. Chains are stored as
+   * a tree, every chain pointing to the one without its last rule.
+   *
+   * @param rules list to add the last rule of every chain to
+   * @param parents list to add the parent of every chain to
+   * @return chains by starting symbol
+   */
+  private int[][] chains(final IntList rules, final IntList parents) {
+    final int[][] idx = new int[symbolCount()][];
+    Arrays.fill(idx, NO_RULES);
+    final boolean[] seen = new boolean[symbolCount()];
+    for(final int l : ruleLhs) seen[l] = true;
+    final boolean[] onPath = new boolean[symbolCount()];
+    final IntList list = new IntList();
+    for(int s = 0; s < idx.length; s++) {
+      if(!seen[s] || lexical[s].length == 0) continue;
+      list.truncate(0);
+      onPath[s] = true;
+      chains(s, -1, onPath, list, rules, parents);
+      onPath[s] = false;
+      if(list.size() > 0) idx[s] = list.toArray();
+    }
+    return idx;
+  }
+
+  /**
+   * Extends a unary chain by every unary rule deriving its top symbol.
+   *
+   * @param sym top symbol of the chain
+   * @param chain ID of the chain, {@code -1} for the empty chain
+   * @param onPath symbols occurring in the chain
+   * @param list list to add the IDs of the new chains to
+   * @param rules list to add the last rule of every chain to
+   * @param parents list to add the parent of every chain to
+   */
+  private void chains(final int sym, final int chain, final boolean[] onPath,
+      final IntList list, final IntList rules, final IntList parents) {
+    for(final int r : lexical[sym]) {
+      final int x = ruleLhs[r];
+      if(onPath[x]) continue;
+      final int c = rules.size();
+      rules.add(r);
+      parents.add(chain);
+      list.add(c);
+      onPath[x] = true;
+      chains(x, c, onPath, list, rules, parents);
+      onPath[x] = false;
+    }
+  }
+
+  /**
+   * Checks whether the unary rules form a cycle, i.e. whether a symbol can
+   * derive itself by a chain followed by one more unary rule.
+   *
+   * @return result of check
+   */
+  private boolean cyclic() {
+    for(int s = 0; s < chains.length; s++) {
+      for(final int r : lexical[s]) if(ruleLhs[r] == s) return true;
+      for(final int c : chains[s]) {
+        for(final int r : lexical[ruleLhs[chainRules[c]]]) {
+          if(ruleLhs[r] == s) return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Computes the reflexive-transitive closure of the left-corner relation.
+   * The bitsets of all left-hand sides are propagated along the rules until
+   * nothing changes any more. Rules whose remaining symbols can never be
+   * completed are skipped, so every left corner can be part of a tree.
+   *
+   * @return left corners by symbol
+   */
+  private long[][] leftCorners() {
+    final int words = symbolCount() + 63 >>> 6;
+    final long[][] lc = new long[symbolCount()][];
+    for(final int l : ruleLhs) {
+      if(lc[l] == null) {
+        lc[l] = new long[words];
+        lc[l][l >>> 6] |= 1L << l;
+      }
+    }
+    for(boolean changed = true; changed;) {
+      changed = false;
+      for(int r = 0; r < ruleLhs.length; r++) {
+        if(minYield(r, 1) == Integer.MAX_VALUE) continue;
+        final long[] to = lc[ruleLhs[r]];
+        final int first = rhs(r, 0);
+        final long[] from = lc[first];
+        if(from == null) {
+          changed |= (to[first >>> 6] & 1L << first) == 0;
+          to[first >>> 6] |= 1L << first;
+        } else if(from != to) {
+          for(int w = 0; w < words; w++) {
+            final long nw = to[w] | from[w];
+            changed |= nw != to[w];
+            to[w] = nw;
+          }
+        }
+      }
+    }
+    return lc;
+  }
+
+  /**
+   * Transposes the left-corner relation for the left-hand sides of lexical
+   * rules, which are the only symbols that can directly cover a token.
+   *
+   * @return symbols with a given left corner, by symbol
+   */
+  private long[][] leftCornerOf() {
+    final int words = symbolCount() + 63 >>> 6;
+    final long[][] of = new long[symbolCount()][];
+    for(int r = 0; r < ruleLhs.length; r++) {
+      if(length(r) == 1 && of[ruleLhs[r]] == null) {
+        of[ruleLhs[r]] = new long[words];
+      }
+    }
+    for(int s = 0; s < symbolCount(); s++) {
+      final long[] lc = leftCorners[s];
+      for(int w = 0; lc != null && w < words; w++) {
+        for(long bits = lc[w]; bits != 0; bits &= bits - 1) {
+          final int x = w << 6 | Long.numberOfTrailingZeros(bits);
+          if(of[x] != null) of[x][s >>> 6] |= 1L << s;
+        }
+      }
+    }
+    return of;
+  }
+
+  /**
+   * Computes the minimum yield of the right-hand side suffixes of all rules.
+   * A symbol spans at least one token if it has a rule with a single symbol,
+   * and otherwise at least the sum of the minimum yields of one of its rules.
+   * Symbols without rules can only be matched as tokens of a lexical rule, so
+   * their minimum yield as a constituent is infinite.
+   *
+   * @return minimum yields, parallel to {@link #ruleRhs}
+   */
+  private int[] ruleYield() {
+    final int[] min = new int[symbolCount()];
+    Arrays.fill(min, Integer.MAX_VALUE);
+    for(int r = 0; r < ruleLhs.length; r++) {
+      if(length(r) == 1) min[ruleLhs[r]] = 1;
+    }
+    for(boolean changed = true; changed;) {
+      changed = false;
+      for(int r = 0; r < ruleLhs.length; r++) {
+        long sum = 0;
+        for(int p = 0; p < length(r); p++) sum += min[rhs(r, p)];
+        if(sum < min[ruleLhs[r]]) {
+          min[ruleLhs[r]] = (int) sum;
+          changed = true;
+        }
+      }
+    }
+
+    final int[] yield = new int[ruleRhs.length];
+    for(int r = 0; r < ruleLhs.length; r++) {
+      long sum = 0;
+      for(int p = length(r); --p >= 0;) {
+        sum += min[rhs(r, p)];
+        yield[ruleOffsets[r] + p] = (int) Math.min(sum, Integer.MAX_VALUE);
+      }
+    }
+    return yield;
   }
 
   /**
@@ -87,8 +599,7 @@ public final class Grammar {
    *             if the terminal is unknown
    */
   public Set<String> getLHS(final String rhs) throws ParserException {
-    final Set<String> set = safe(leftmost.get(rhs));
-    set.retainAll(singletons);
+    final Set<String> set = lhs(lexical(id(rhs)));
     if (set.isEmpty()) throw new ParserException("Unknown terminal '" + rhs + "'.");
     return set;
   }
@@ -100,7 +611,7 @@ public final class Grammar {
    * @return set of left-hand sides
    */
   public Set<String> withLeftmost(final String rhs) {
-    return safe(leftmost.get(rhs));
+    return lhs(withLeftmost(id(rhs)));
   }
 
   /**
@@ -110,48 +621,284 @@ public final class Grammar {
    * @return corresponding right-hand sides
    */
   public Set<String[]> rhs(final String lhs) {
-    return safe(productions.get(lhs));
+    final int id = id(lhs);
+    final Set<String[]> set = new TreeSet<String[]>(CMP);
+    for(int r = 0; r < ruleLhs.length; r++) {
+      if(ruleLhs[r] == id) set.add(labels(r));
+    }
+    return Collections.unmodifiableSet(set);
+  }
+
+  /**
+   * Returns the names of the left-hand sides of the given rules.
+   *
+   * @param rules rule IDs
+   * @return set of left-hand sides
+   */
+  private Set<String> lhs(final int[] rules) {
+    final Set<String> set = new HashSet<String>();
+    for(final int r : rules) set.add(symbol(ruleLhs[r]));
+    return Collections.unmodifiableSet(set);
+  }
+
+  /**
+   * Returns the recognizer for this grammar, binarizing it on the first call.
+   *
+   * @return recognizer
+   */
+  synchronized Recognizer recognizer() {
+    if(recognizer == null) recognizer = new Recognizer(this);
+    return recognizer;
+  }
+
+  /**
+   * Number of distinct symbols in this grammar.
+   *
+   * @return number of symbols
+   */
+  int symbolCount() {
+    return lexicon.size();
+  }
+
+  /**
+   * Number of rules in this grammar.
+   *
+   * @return number of rules
+   */
+  int ruleCount() {
+    return ruleLhs.length;
+  }
+
+  /**
+   * Returns the ID of the given symbol.
+   *
+   * @param sym symbol name
+   * @return ID of the symbol, {@code -1} if it does not occur in the grammar
+   */
+  int id(final String sym) {
+    return lexicon.get(sym);
+  }
+
+  /**
+   * Returns the name of the symbol with the given ID.
+   *
+   * @param sym symbol ID
+   * @return name of the symbol
+   */
+  String symbol(final int sym) {
+    return lexicon.name(sym);
   }
 
   /**
-   * Safety wrapper for replacing null references with the empty set.
+   * Returns the names of the right-hand side symbols of a rule.
    *
-   * @param <T> type of the set
-   * @param set the set, potentially {@code null}
-   * @return {@code null}-safe set
+   * @param rule rule ID
+   * @return symbol names
    */
-  private static <T> Set<T> safe(final Set<T> set) {
-    return set == null ? Collections.<T>emptySet() : set;
+  String[] labels(final int rule) {
+    final String[] labels = new String[length(rule)];
+    for(int i = 0; i < labels.length; i++) labels[i] = symbol(rhs(rule, i));
+    return labels;
   }
 
   /**
-   * Adds a production to this grammar.
+   * Returns a string representation of a rule, for example to format the
+   * rule IDs of {@link ParserEventListener parser events}.
    *
-   * @param lhs left-hand side
-   * @param rhs right-hand side
-   * @return success flag
+   * @param rule rule ID
+   * @return string representation, like {@code "S -> NP VP"}
    */
-  private boolean addProduction(final String lhs, final String[] rhs) {
-    // insert into production map
-    TreeSet<String[]> set = productions.get(lhs);
-    if (set == null) {
-      set = new TreeSet<String[]>(CMP);
-      productions.put(lhs, set);
+  public String toString(final int rule) {
+    final StringBuilder sb = new StringBuilder(symbol(ruleLhs[rule]))
+        .append(" ->");
+    for(final String label : labels(rule)) sb.append(' ').append(label);
+    return sb.toString();
+  }
+
+  /**
+   * Returns the left-hand side of a rule.
+   *
+   * @param rule rule ID
+   * @return symbol ID
+   */
+  int lhs(final int rule) {
+    return ruleLhs[rule];
+  }
+
+  /**
+   * Returns the cost of a rule, the negative logarithm of its weight.
+   * Unweighted rules cost nothing.
+   *
+   * @param rule rule ID
+   * @return cost
+   */
+  double cost(final int rule) {
+    return ruleCosts[rule];
+  }
+
+  /**
+   * Checks whether any rule of this grammar has a weight. The trees of a
+   * weighted grammar are ranked by their cost.
+   *
+   * @return result of check
+   */
+  public boolean isWeighted() {
+    return weighted;
+  }
+
+  /**
+   * Returns the IDs of the unary chains starting at a symbol. The returned
+   * array must not be modified.
+   *
+   * @param sym symbol ID
+   * @return chain IDs
+   */
+  int[] chains(final int sym) {
+    return chains[sym];
+  }
+
+  /**
+   * Returns the last rule of a unary chain, whose left-hand side is the
+   * symbol derived by the chain.
+   *
+   * @param chain chain ID
+   * @return rule ID
+   */
+  int chainRule(final int chain) {
+    return chainRules[chain];
+  }
+
+  /**
+   * Returns the chain without the last rule of a unary chain.
+   *
+   * @param chain chain ID
+   * @return chain ID, {@code -1} if the chain consists of a single rule
+   */
+  int chainParent(final int chain) {
+    return chainParents[chain];
+  }
+
+  /**
+   * Returns the number of rules of a unary chain.
+   *
+   * @param chain chain ID
+   * @return number of rules
+   */
+  int chainLength(final int chain) {
+    int n = 0;
+    for(int c = chain; c >= 0; c = chainParents[c]) n++;
+    return n;
+  }
+
+  /**
+   * Returns the sum of the costs of the rules of a unary chain.
+   *
+   * @param chain chain ID
+   * @return cost
+   */
+  double chainCost(final int chain) {
+    double cost = 0;
+    for(int c = chain; c >= 0; c = chainParents[c]) {
+      cost += ruleCosts[chainRules[c]];
     }
-    // insert into singleton set
-    if (rhs.length == 1) {
-      singletons.add(lhs);
+    return cost;
+  }
+
+  /**
+   * Checks whether this grammar has a cycle of unary rules, like
+   * {@code A -> B} and {@code B -> A}. Derivations following such a cycle
+   * are never part of a parse tree.
+   *
+   * @return result of check
+   */
+  public boolean hasUnaryCycles() {
+    return cyclic;
+  }
+
+  /**
+   * Returns the length of the right-hand side of a rule.
+   *
+   * @param rule rule ID
+   * @return number of RHS symbols
+   */
+  int length(final int rule) {
+    return ruleOffsets[rule + 1] - ruleOffsets[rule];
+  }
+
+  /**
+   * Returns a symbol of the right-hand side of a rule.
+   *
+   * @param rule rule ID
+   * @param pos position in the right-hand side
+   * @return symbol ID
+   */
+  int rhs(final int rule, final int pos) {
+    return ruleRhs[ruleOffsets[rule] + pos];
+  }
+
+  /**
+   * Adds all symbols that can derive a token sequence starting with the given
+   * token to a bitset, i.e. all symbols whose FIRST set contains it.
+   *
+   * @param token symbol ID of the token, may be {@code -1}
+   * @param bits bitset of symbols
+   */
+  void startingWith(final int token, final long[] bits) {
+    for(final int r : lexical(token)) {
+      final long[] of = leftCornerOf[ruleLhs[r]];
+      for(int w = 0; w < of.length; w++) bits[w] |= of[w];
     }
+  }
+
+  /**
+   * Returns the minimum number of tokens needed to complete a rule from the
+   * given dot position on.
+   *
+   * @param rule rule ID
+   * @param dot dot position
+   * @return minimum number of tokens, {@link Integer#MAX_VALUE} if the rule
+   *   can never be completed
+   */
+  int minYield(final int rule, final int dot) {
+    return dot == length(rule) ? 0 : ruleYield[ruleOffsets[rule] + dot];
+  }
+
+  /**
+   * Returns the IDs of all rules whose right-hand side starts with the given
+   * symbol. The returned array must not be modified.
+   *
+   * @param sym symbol ID, may be {@code -1}
+   * @return rule IDs
+   */
+  int[] withLeftmost(final int sym) {
+    return sym < 0 ? NO_RULES : leftmost[sym];
+  }
 
-    // insert into leftmost-token map
-    Set<String> lefts = leftmost.get(rhs[0]);
-    if (lefts == null) {
-      lefts = new HashSet<String>();
-      leftmost.put(rhs[0], lefts);
+  /**
+   * Adds the given symbol and all its left corners, i.e. the symbols that can
+   * start one of its derivations, to a bitset.
+   *
+   * @param sym symbol ID
+   * @param bits bitset of symbols
+   */
+  void leftCorners(final int sym, final long[] bits) {
+    final long[] lc = leftCorners[sym];
+    if(lc == null) {
+      bits[sym >>> 6] |= 1L << sym;
+    } else {
+      for(int w = 0; w < lc.length; w++) bits[w] |= lc[w];
     }
-    lefts.add(lhs);
+  }
 
-    return set.add(rhs);
+  /**
+   * Returns the IDs of all rules whose right-hand side consists of only the
+   * given symbol. The returned array must not be modified.
+   *
+   * @param sym symbol ID, may be {@code -1}
+   * @return rule IDs
+   */
+  int[] lexical(final int sym) {
+    return sym < 0 ? NO_RULES : lexical[sym];
   }
 
 }
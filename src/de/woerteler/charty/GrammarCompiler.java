@@ -0,0 +1,123 @@
+package de.woerteler.charty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Compiles successive versions of a grammar definition that is being edited.
+ * Lines that did not change since the last compilation are not split again,
+ * and if the productions are the same as before, for example because only
+ * comments or white space were edited, the last grammar is returned as is.
+ * Unlike the {@link Grammar#Grammar(java.io.Reader) constructor}, all errors
+ * of a definition are collected, by line.
+ *
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @author Leo Woerteler
+ */
+public final class GrammarCompiler {
+
+  /** Productions of the lines of the last compilation, by trimmed line. */
+  private Map<String, String[]> lines = new HashMap<String, String[]>();
+  /** Productions of the last compiled grammar. */
+  private List<String[]> last = Collections.emptyList();
+  /** Last compiled grammar, {@code null} if there is none. */
+  private Grammar grammar;
+  /** Errors of the last compilation, by line number. */
+  private final SortedMap<Integer, String> errors =
+      new TreeMap<Integer, String>();
+
+  /**
+   * Compiles a grammar definition.
+   *
+   * @param text grammar definition
+   * @return the compiled grammar
+   * @throws GrammarSyntaxException the first error, if the definition
+   *   contains any
+   */
+  public Grammar compile(final String text) throws GrammarSyntaxException {
+    final Map<String, String[]> cache = new HashMap<String, String[]>();
+    final Set<List<String>> productions = new HashSet<List<String>>();
+    final List<String[]> prods = new ArrayList<String[]>();
+    errors.clear();
+
+    final int len = text.length();
+    for(int pos = 0, no = 1; pos < len; no++) {
+      int end = pos;
+      while(end < len && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+        end++;
+      }
+      final String line = text.substring(pos, end).trim();
+      pos = end < len && text.charAt(end) == '\r' && end + 1 < len
+          && text.charAt(end + 1) == '\n' ? end + 2 : end + 1;
+
+      String[] parts = lines.get(line);
+      if(parts == null) {
+        try {
+          parts = GrammarLoader.production(line, no);
+        } catch(final GrammarSyntaxException ex) {
+          errors.put(no, ex.getMessage());
+          continue;
+        }
+        if(parts == null) continue;
+      }
+      cache.put(line, parts);
+      final List<String> key = Arrays.asList(parts);
+      if(!productions.add(key.subList(0, GrammarLoader.end(parts)))) {
+        errors.put(no, GrammarLoader.duplicate(line));
+      } else {
+        prods.add(parts);
+      }
+    }
+    lines = cache;
+
+    if(errors.isEmpty() && prods.isEmpty()) {
+      errors.put(0, "There must be at least one production.");
+    }
+    if(!errors.isEmpty()) {
+      final int no = errors.firstKey();
+      throw new GrammarSyntaxException(errors.get(no), no);
+    }
+
+    if(grammar == null || !same(prods, last)) {
+      grammar = new Grammar(prods);
+      last = prods;
+    }
+    return grammar;
+  }
+
+  /**
+   * Returns the errors found by the last compilation.
+   *
+   * @return error messages by line number, starting with {@code 1}; errors
+   *   that do not refer to a single line are stored under {@code 0}
+   */
+  public SortedMap<Integer, String> getErrors() {
+    return Collections.unmodifiableSortedMap(errors);
+  }
+
+  /**
+   * Checks whether two lists contain the same production instances, which
+   * are shared between compilations for unchanged lines.
+   *
+   * @param a first list
+   * @param b second list
+   * @return result of check
+   */
+  private static boolean same(final List<String[]> a, final List<String[]> b) {
+    if(a.size() != b.size()) return false;
+    for(int i = 0; i < a.size(); i++) {
+      if(a.get(i) != b.get(i)) return false;
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,528 @@
+package de.woerteler.charty;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.woerteler.util.IntList;
+
+/**
+ * Streaming reader for textual grammar definitions. The input is read in
+ * large blocks of characters and tokenized in place: symbols are interned
+ * through a hash table over the characters of the block, so strings are only
+ * created for new symbols, and every production is stored directly as
+ * integers. Duplicate productions are detected on the integer form.
+ *
+ * @author Leo Woerteler
+ */
+final class GrammarLoader {
+
+  /** Size of the blocks read from the input. */
+  private static final int BLOCK = 1 << 16;
+  /** Initial size of the hash tables, must be a power of two. */
+  private static final int CAP = 1 << 10;
+
+  /** Symbol names, indexed by ID. */
+  private final List<String> symbols = new ArrayList<String>();
+  /** Hash codes of the symbol names, indexed by ID. */
+  private final IntList hashes = new IntList();
+  /** Hash table of symbol IDs plus one, {@code 0} marks empty slots. */
+  private int[] symbolTable = new int[CAP];
+
+  /** Left-hand side of every rule. */
+  final IntList lhss = new IntList();
+  /** Offsets of the rules' right-hand sides in {@link #rhss}. */
+  final IntList offsets = new IntList();
+  /** Right-hand sides of all rules, concatenated. */
+  final IntList rhss = new IntList();
+  /** Costs of the rules, the negative logarithms of their weights. */
+  private double[] costs = new double[CAP];
+  /** Hash table of rule IDs plus one, {@code 0} marks empty slots. */
+  private int[] ruleTable = new int[CAP];
+  /** Start and end positions of the tokens of the current line. */
+  private final IntList bounds = new IntList();
+
+  /** Constructor. */
+  private GrammarLoader() {
+    offsets.add(0);
+  }
+
+  /**
+   * Reads all productions of a grammar definition.
+   *
+   * @param in reader for the definition
+   * @return loader containing the productions
+   * @throws GrammarSyntaxException if the definition can't be read
+   */
+  static GrammarLoader load(final Reader in) throws GrammarSyntaxException {
+    final GrammarLoader ld = new GrammarLoader();
+    try {
+      ld.read(in);
+    } catch(final IOException ex) {
+      final GrammarSyntaxException gse = new GrammarSyntaxException(
+          "Can't read grammar: " + ex.getMessage());
+      gse.initCause(ex);
+      throw gse;
+    }
+    return ld;
+  }
+
+  /**
+   * Collects productions that were already split and checked for duplicates.
+   *
+   * @param prods productions as left-hand side, arrow and right-hand side
+   * @return loader containing the productions
+   */
+  static GrammarLoader of(final List<String[]> prods) {
+    final GrammarLoader ld = new GrammarLoader();
+    for(final String[] parts : prods) {
+      final int end = end(parts);
+      ld.lhss.add(ld.intern(parts[0]));
+      for(int i = 2; i < end; i++) ld.rhss.add(ld.intern(parts[i]));
+      ld.offsets.add(ld.rhss.size());
+      ld.cost(end == parts.length ? 1 : weight(parts[end]));
+    }
+    return ld;
+  }
+
+  /**
+   * Returns the costs of all rules.
+   *
+   * @return costs, indexed by rule ID
+   */
+  double[] costs() {
+    return Arrays.copyOf(costs, lhss.size());
+  }
+
+  /**
+   * Returns the end of the symbols of a split production, which is followed
+   * by the weight if the production has one.
+   *
+   * @param parts production as left-hand side, arrow and right-hand side
+   * @return number of symbols plus one for the arrow
+   */
+  static int end(final String[] parts) {
+    final int n = parts.length;
+    return n > 3 && !Double.isNaN(weight(parts[n - 1])) ? n - 1 : n;
+  }
+
+  /**
+   * Returns the weight given by a token. A token is a weight if it contains a
+   * decimal point and {@link Double#parseDouble(String)} accepts it, like
+   * {@code 0.5} or {@code .25e-2}. Integers such as {@code 101} are symbols.
+   * Other numbers without a decimal point, such as {@code 1e-3}, could be
+   * either and are rejected.
+   *
+   * @param tok token
+   * @return weight, {@link Double#NaN} if the token is a symbol and {@code -1}
+   *   for a number that is not a valid weight
+   */
+  static double weight(final String tok) {
+    if(tok.isEmpty() || !numeric(tok.charAt(0))) return Double.NaN;
+    final double w;
+    try {
+      w = Double.parseDouble(tok);
+    } catch(final NumberFormatException ex) {
+      return Double.NaN;
+    }
+    if(tok.indexOf('.') < 0) return integer(tok) ? Double.NaN : -1;
+    return Double.isNaN(w) ? -1 : w;
+  }
+
+  /**
+   * Checks whether a token is an integer, i.e. consists of digits and an
+   * optional leading sign.
+   *
+   * @param tok token
+   * @return result of check
+   */
+  private static boolean integer(final String tok) {
+    final int n = tok.length();
+    int i = tok.charAt(0) == '+' || tok.charAt(0) == '-' ? 1 : 0;
+    if(i == n) return false;
+    while(i < n && tok.charAt(i) >= '0' && tok.charAt(i) <= '9') i++;
+    return i == n;
+  }
+
+  /**
+   * Returns the weight given by a token in a buffer.
+   *
+   * @param buf buffer
+   * @param from start of the token
+   * @param to end of the token
+   * @return weight as returned by {@link #weight(String)}
+   */
+  private static double weight(final char[] buf, final int from,
+      final int to) {
+    return numeric(buf[from]) ? weight(new String(buf, from, to - from))
+        : Double.NaN;
+  }
+
+  /**
+   * Checks whether a character can start a number.
+   *
+   * @param c character
+   * @return result of check
+   */
+  private static boolean numeric(final char c) {
+    return c >= '0' && c <= '9' || c == '+' || c == '-' || c == '.';
+  }
+
+  /**
+   * Checks whether a weight can be used, i.e. lies in the range {@code (0, 1]}
+   * so that the cost of every rule is non-negative.
+   *
+   * @param weight weight
+   * @return result of check
+   */
+  static boolean valid(final double weight) {
+    return weight > 0 && weight <= 1;
+  }
+
+  /**
+   * Sets the cost of the last rule.
+   *
+   * @param weight weight of the rule, positive
+   */
+  private void cost(final double weight) {
+    final int r = lhss.size() - 1;
+    if(r == costs.length) costs = Arrays.copyOf(costs, r << 1);
+    costs[r] = -Math.log(weight);
+  }
+
+  /**
+   * Returns the names of all symbols.
+   *
+   * @return symbol names, indexed by ID
+   */
+  String[] symbols() {
+    return symbols.toArray(new String[symbols.size()]);
+  }
+
+  /**
+   * Reads the input line by line. Lines are only ever split at the end of a
+   * block; the incomplete rest is moved to the start of the buffer.
+   *
+   * @param in reader
+   * @throws IOException I/O exception
+   * @throws GrammarSyntaxException if a production is invalid
+   */
+  private void read(final Reader in)
+      throws IOException, GrammarSyntaxException {
+    char[] buf = new char[BLOCK];
+    int len = 0, no = 1;
+    boolean eof = false, cr = false;
+    while(!eof) {
+      if(len == buf.length) buf = Arrays.copyOf(buf, len << 1);
+      final int n = in.read(buf, len, buf.length - len);
+      if(n < 0) {
+        eof = true;
+      } else {
+        len += n;
+      }
+
+      int pos = 0;
+      // skip the line feed of a CR LF pair split by the block boundary
+      if(cr && len > 0 && buf[0] == '\n') pos = 1;
+      cr = false;
+      for(int end = pos; end < len; end++) {
+        final char c = buf[end];
+        if(c != '\n' && c != '\r') continue;
+        line(buf, pos, end, no++);
+        if(c == '\r') {
+          if(end + 1 == len) {
+            cr = true;
+          } else if(buf[end + 1] == '\n') {
+            end++;
+          }
+        }
+        pos = end + 1;
+      }
+      if(eof && pos < len) {
+        line(buf, pos, len, no);
+        pos = len;
+      }
+      System.arraycopy(buf, pos, buf, 0, len - pos);
+      len -= pos;
+    }
+  }
+
+  /**
+   * Splits a single line of a grammar definition into a production. Lines of
+   * definitions that are being edited are compiled one by one through this
+   * method, with the same tokenization and error messages as when loading.
+   *
+   * @param line line
+   * @param no line number, starting with {@code 1}
+   * @return production as left-hand side, arrow, right-hand side symbols and
+   *   optional weight, {@code null} for empty lines and comments
+   * @throws GrammarSyntaxException if the line is not a valid production
+   */
+  static String[] production(final String line, final int no)
+      throws GrammarSyntaxException {
+    final char[] buf = line.toCharArray();
+    final IntList bounds = new IntList();
+    split(buf, 0, buf.length, no, bounds);
+    if(bounds.size() == 0) return null;
+    final String[] parts = new String[bounds.size() >>> 1];
+    for(int i = 0; i < parts.length; i++) {
+      final int p = bounds.get(2 * i);
+      parts[i] = new String(buf, p, bounds.get(2 * i + 1) - p);
+    }
+    return parts;
+  }
+
+  /**
+   * Returns the error message for a production that is declared twice.
+   *
+   * @param prod production
+   * @return error message
+   */
+  static String duplicate(final String prod) {
+    return "Production '" + prod + "' is declared more than once.";
+  }
+
+  /**
+   * Tokenizes a single line and adds its production.
+   *
+   * @param buf buffer
+   * @param from start of the line
+   * @param to end of the line
+   * @param no line number
+   * @throws GrammarSyntaxException if the production is invalid
+   */
+  private void line(final char[] buf, final int from, final int to,
+      final int no) throws GrammarSyntaxException {
+    final double weight = split(buf, from, to, no, bounds);
+    final int n = bounds.size();
+    if(n == 0) return;
+
+    final int end = Double.isNaN(weight) ? n : n - 2;
+    lhss.add(intern(buf, bounds.get(0), bounds.get(1)));
+    for(int i = 4; i < end; i += 2) {
+      rhss.add(intern(buf, bounds.get(i), bounds.get(i + 1)));
+    }
+    offsets.add(rhss.size());
+    cost(Double.isNaN(weight) ? 1 : weight);
+    if(!unique()) {
+      final int s = bounds.get(0);
+      throw new GrammarSyntaxException(duplicate(
+          new String(buf, s, bounds.get(n - 1) - s)), no);
+    }
+  }
+
+  /**
+   * Splits a line into its tokens and checks that they form a production.
+   *
+   * @param buf buffer
+   * @param from start of the line
+   * @param to end of the line
+   * @param no line number
+   * @param bounds list for the start and end positions of the tokens, which
+   *   is left empty for empty lines and comments
+   * @return weight of the production, {@link Double#NaN} if it has none
+   * @throws GrammarSyntaxException if the line is not a valid production
+   */
+  private static double split(final char[] buf, final int from, final int to,
+      final int no, final IntList bounds) throws GrammarSyntaxException {
+    bounds.truncate(0);
+    // same as String#trim()
+    int s = from, e = to;
+    while(s < e && buf[s] <= ' ') s++;
+    while(e > s && buf[e - 1] <= ' ') e--;
+    if(s == e || buf[s] == '#') return Double.NaN;
+
+    for(int p = s; p < e;) {
+      int q = p;
+      while(q < e && !space(buf[q])) q++;
+      // anything but the arrow after the left-hand side makes the line
+      // unintelligible
+      if(bounds.size() == 2 && (q - p != 2 || buf[p] != '-'
+          || buf[p + 1] != '>')) break;
+      bounds.add(p);
+      bounds.add(q);
+      for(p = q; p < e && space(buf[p]);) p++;
+    }
+
+    final int parts = bounds.size() >>> 1;
+    if(parts < 2) throw new GrammarSyntaxException("Can't understand "
+        + "production '" + new String(buf, s, e - s) + "'.", no);
+    if(parts == 2) throw new GrammarSyntaxException("Right hand side missing"
+        + " in '" + new String(buf, s, e - s) + "'.", no);
+    if(parts == 3) return Double.NaN;
+
+    final double weight = weight(buf, bounds.get(2 * parts - 2), e);
+    if(!Double.isNaN(weight) && !valid(weight)) {
+      throw new GrammarSyntaxException("Invalid weight in '"
+          + new String(buf, s, e - s) + "'.", no);
+    }
+    return weight;
+  }
+
+  /**
+   * Checks whether a character separates the symbols of a production, like
+   * {@code \s} in a regular expression.
+   *
+   * @param c character
+   * @return result of check
+   */
+  private static boolean space(final char c) {
+    return c == ' ' || c == '\t' || c == '\u000B' || c == '\f';
+  }
+
+  /**
+   * Returns the ID of the symbol in the given range of a buffer, assigning a
+   * new one if necessary.
+   *
+   * @param buf buffer
+   * @param from start of the symbol
+   * @param to end of the symbol
+   * @return the symbol's ID
+   */
+  private int intern(final char[] buf, final int from, final int to) {
+    int h = 0;
+    for(int i = from; i < to; i++) h = 31 * h + buf[i];
+    final int mask = symbolTable.length - 1;
+    int s = slot(h, mask);
+    for(int t; (t = symbolTable[s]) != 0; s = s + 1 & mask) {
+      if(hashes.get(t - 1) == h && equal(symbols.get(t - 1), buf, from, to)) {
+        return t - 1;
+      }
+    }
+    return add(new String(buf, from, to - from), h, s);
+  }
+
+  /**
+   * Returns the ID of the given symbol, assigning a new one if necessary.
+   *
+   * @param sym symbol
+   * @return the symbol's ID
+   */
+  private int intern(final String sym) {
+    final int h = sym.hashCode(), mask = symbolTable.length - 1;
+    int s = slot(h, mask);
+    for(int t; (t = symbolTable[s]) != 0; s = s + 1 & mask) {
+      if(hashes.get(t - 1) == h && symbols.get(t - 1).equals(sym)) return t - 1;
+    }
+    return add(sym, h, s);
+  }
+
+  /**
+   * Adds a new symbol.
+   *
+   * @param sym symbol
+   * @param h hash code of the symbol
+   * @param s empty slot in the hash table
+   * @return the symbol's ID
+   */
+  private int add(final String sym, final int h, final int s) {
+    final int id = symbols.size();
+    symbols.add(sym);
+    hashes.add(h);
+    if(id + 1 > symbolTable.length >>> 1) {
+      symbolTable = new int[symbolTable.length << 1];
+      final int mask = symbolTable.length - 1;
+      for(int i = 0; i <= id; i++) {
+        int t = slot(hashes.get(i), mask);
+        while(symbolTable[t] != 0) t = t + 1 & mask;
+        symbolTable[t] = i + 1;
+      }
+    } else {
+      symbolTable[s] = id + 1;
+    }
+    return id;
+  }
+
+  /**
+   * Checks whether the last rule differs from all previous ones, and adds it
+   * to the hash table of rules if so.
+   *
+   * @return {@code true} if the rule is new, {@code false} otherwise
+   */
+  private boolean unique() {
+    final int r = lhss.size() - 1;
+    final int mask = ruleTable.length - 1;
+    int s = slot(hash(r), mask);
+    for(int t; (t = ruleTable[s]) != 0; s = s + 1 & mask) {
+      if(sameRule(t - 1, r)) return false;
+    }
+    if(r + 1 > ruleTable.length >>> 1) {
+      ruleTable = new int[ruleTable.length << 1];
+      final int m = ruleTable.length - 1;
+      for(int i = 0; i <= r; i++) {
+        int t = slot(hash(i), m);
+        while(ruleTable[t] != 0) t = t + 1 & m;
+        ruleTable[t] = i + 1;
+      }
+    } else {
+      ruleTable[s] = r + 1;
+    }
+    return true;
+  }
+
+  /**
+   * Hash code of a rule.
+   *
+   * @param r rule ID
+   * @return hash code
+   */
+  private int hash(final int r) {
+    int h = lhss.get(r);
+    for(int i = offsets.get(r); i < offsets.get(r + 1); i++) {
+      h = 31 * h + rhss.get(i);
+    }
+    return h;
+  }
+
+  /**
+   * Checks whether two rules have the same sides.
+   *
+   * @param a first rule ID
+   * @param b second rule ID
+   * @return result of check
+   */
+  private boolean sameRule(final int a, final int b) {
+    final int oa = offsets.get(a), ob = offsets.get(b);
+    final int len = offsets.get(a + 1) - oa;
+    if(lhss.get(a) != lhss.get(b) || offsets.get(b + 1) - ob != len) {
+      return false;
+    }
+    for(int i = 0; i < len; i++) {
+      if(rhss.get(oa + i) != rhss.get(ob + i)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Compares a string to a range of characters.
+   *
+   * @param str string
+   * @param buf buffer
+   * @param from start of the range
+   * @param to end of the range
+   * @return result of check
+   */
+  private static boolean equal(final String str, final char[] buf,
+      final int from, final int to) {
+    if(str.length() != to - from) return false;
+    for(int i = 0; i < to - from; i++) {
+      if(str.charAt(i) != buf[from + i]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the home slot of a hash code in a hash table.
+   *
+   * @param hash hash code
+   * @param mask hash table size minus one
+   * @return slot
+   */
+  private static int slot(final int hash, final int mask) {
+    final int h = hash * 0x9E3779B9;
+    return (h ^ h >>> 16) & mask;
+  }
+
+}
@@ -10,6 +10,9 @@ public class GrammarSyntaxException extends Exception {
   /** Serial version UID. */
   private static final long serialVersionUID = 7855486465397999969L;
 
+  /** Line of the definition the error refers to, {@code 0} if none. */
+  private final int line;
+
   /**
    * Constructs a new exception with the specified detail message. The cause
    * is not initialized, and may subsequently be initialized by a call to
@@ -19,7 +22,29 @@ public class GrammarSyntaxException extends Exception {
    *     retrieval by the {@link #getMessage()} method.
    */
   public GrammarSyntaxException(final String message) {
+    this(message, 0);
+  }
+
+  /**
+   * Constructs a new exception referring to a line of the grammar definition.
+   *
+   * @param message the detail message
+   * @param ln line number, starting with {@code 1}, or {@code 0} if the error
+   *     does not refer to a single line
+   */
+  public GrammarSyntaxException(final String message, final int ln) {
     super(message);
+    line = ln;
+  }
+
+  /**
+   * Returns the line of the grammar definition the error refers to.
+   *
+   * @return line number, starting with {@code 1}, or {@code 0} if the error
+   *     does not refer to a single line
+   */
+  public int getLine() {
+    return line;
   }
 
 }
@@ -0,0 +1,243 @@
+package de.woerteler.charty;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Lazily enumerates the parse trees of a packed forest in ranked order,
+ * cheapest trees first: by the sum of the costs of their rules for weighted
+ * grammars, and then by size, i.e. with fewest rule applications first. This
+ * is the lazy k-best algorithm by Huang and Chiang: every edge keeps the
+ * derivations ranked so far and a queue of candidates, and the {@code k}-th
+ * best derivation of an edge is only computed once it is actually needed.
+ *
+ * @author Leo Woerteler
+ */
+final class KBestIterator implements Iterator<ParseTree> {
+
+  /** Grammar. */
+  private final Grammar grammar;
+  /** The chart. */
+  private final Chart chart;
+  /** IDs of the root edges. */
+  private final int[] roots;
+  /** Ranking state of the edges, created on demand. */
+  private final Node[] nodes;
+  /** Candidates for the next tree, with the root index as link. */
+  private final PriorityQueue<Deriv> top = new PriorityQueue<Deriv>();
+
+  /**
+   * Constructor.
+   *
+   * @param c the chart
+   * @param rts IDs of the root edges
+   */
+  KBestIterator(final Chart c, final int[] rts) {
+    grammar = c.grammar;
+    chart = c;
+    roots = rts;
+    nodes = new Node[c.size()];
+    for(int r = 0; r < rts.length; r++) {
+      final Deriv best = get(rts[r], 0);
+      top.add(new Deriv(r, 0, 0, best.cost, best.size));
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !top.isEmpty();
+  }
+
+  @Override
+  public ParseTree next() {
+    if(!hasNext()) throw new NoSuchElementException();
+    final Deriv d = top.poll();
+    final int root = roots[d.link];
+    final Deriv succ = get(root, d.child + 1);
+    if(succ != null) {
+      top.add(new Deriv(d.link, 0, d.child + 1, succ.cost, succ.size));
+    }
+    return tree(root, d.child);
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Returns the {@code k}-th best derivation of the given edge.
+   *
+   * @param id ID of the edge
+   * @param k rank, starting with {@code 0}
+   * @return the derivation, or {@code null} if there are at most {@code k}
+   */
+  private Deriv get(final int id, final int k) {
+    Node n = nodes[id];
+    if(n == null) {
+      n = new Node();
+      nodes[id] = n;
+      final int links = chart.links(id);
+      if(links == 0) {
+        n.found.add(new Deriv(-1, 0, 0, grammar.cost(chart.rule(id)), 1));
+      } else {
+        for(int l = 0; l < links; l++) push(id, n, l, 0, 0);
+      }
+    }
+    while(n.found.size() <= k) {
+      if(!n.found.isEmpty()) {
+        // successors of the last derivation become candidates
+        final Deriv last = n.found.get(n.found.size() - 1);
+        if(last.link >= 0) {
+          if(chart.pred(id, last.link) >= 0) {
+            push(id, n, last.link, last.pred + 1, last.child);
+          }
+          push(id, n, last.link, last.pred, last.child + 1);
+        }
+      }
+      if(n.cands.isEmpty()) return null;
+      n.found.add(n.cands.poll());
+    }
+    return n.found.get(k);
+  }
+
+  /**
+   * Adds a candidate derivation for an edge if all its parts exist and it has
+   * not been seen before.
+   *
+   * @param id ID of the edge
+   * @param n ranking state of the edge
+   * @param link backpointer pair of the edge
+   * @param p rank of the predecessor's derivation
+   * @param c rank of the child's derivation
+   */
+  private void push(final int id, final Node n, final int link, final int p,
+      final int c) {
+    final int pred = chart.pred(id, link);
+    final Deriv pd = pred < 0 ? null : get(pred, p);
+    final Deriv cd = get(chart.child(id, link), c);
+    if(pred >= 0 && pd == null || cd == null) return;
+    // starting a new rule adds its cost and one node to the tree, a unary
+    // chain those of all its rules
+    final int chain = Chart.chain(pred);
+    final Deriv d = pd != null
+        ? new Deriv(link, p, c, pd.cost + cd.cost, pd.size + cd.size)
+        : chain >= 0 ? new Deriv(link, p, c, grammar.chainCost(chain) + cd.cost,
+            grammar.chainLength(chain) + cd.size)
+        : new Deriv(link, p, c, grammar.cost(chart.rule(id)) + cd.cost,
+            1 + cd.size);
+    if(n.seen.add(d)) n.cands.add(d);
+  }
+
+  /**
+   * Builds the tree of the {@code k}-th best derivation of an inactive edge.
+   *
+   * @param id ID of the edge
+   * @param k rank of the derivation
+   * @return parse tree
+   */
+  private ParseTree tree(final int id, final int k) {
+    final int rule = chart.rule(id);
+    if(chart.links(id) == 0) return ParseTree.lexical(grammar, rule);
+    final List<ParseTree> kids = new ArrayList<ParseTree>(grammar.length(rule));
+    children(id, k, kids);
+    return ParseTree.inner(grammar, rule, kids);
+  }
+
+  /**
+   * Collects the subtrees left of the dot for the {@code k}-th best
+   * derivation of an edge.
+   *
+   * @param id ID of the edge
+   * @param k rank of the derivation
+   * @param kids list to add the subtrees to
+   */
+  private void children(final int id, final int k, final List<ParseTree> kids) {
+    final Deriv d = nodes[id].found.get(k);
+    final int pred = chart.pred(id, d.link);
+    if(pred >= 0) children(pred, d.pred, kids);
+    kids.add(ParseTree.chain(grammar, pred,
+        tree(chart.child(id, d.link), d.child)));
+  }
+
+  /**
+   * Ranking state of a single edge.
+   *
+   * @author Leo Woerteler
+   */
+  private static final class Node {
+    /** Derivations ranked so far, best first. */
+    final List<Deriv> found = new ArrayList<Deriv>();
+    /** Candidates for the next derivation. */
+    final PriorityQueue<Deriv> cands = new PriorityQueue<Deriv>();
+    /** All derivations that have ever been candidates. */
+    final Set<Deriv> seen = new HashSet<Deriv>();
+  }
+
+  /**
+   * A derivation of an edge, given by one of its backpointer pairs and the
+   * ranks of the derivations chosen for the predecessor and the child.
+   *
+   * @author Leo Woerteler
+   */
+  private static final class Deriv implements Comparable<Deriv> {
+    /** Prime number used as factor in hash-code calculation. */
+    private static final int HASH_CODE_PRIME = 31;
+
+    /** Backpointer pair, {@code -1} for edges read from the input. */
+    final int link;
+    /** Rank of the predecessor's derivation. */
+    final int pred;
+    /** Rank of the child's derivation. */
+    final int child;
+    /** Sum of the costs of the rules of the resulting (sub)tree. */
+    final double cost;
+    /** Number of inner nodes of the resulting (sub)tree. */
+    final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param l backpointer pair
+     * @param p rank of the predecessor's derivation
+     * @param c rank of the child's derivation
+     * @param cst cost of the derivation
+     * @param sz size of the derivation
+     */
+    Deriv(final int l, final int p, final int c, final double cst,
+        final int sz) {
+      link = l;
+      pred = p;
+      child = c;
+      cost = cst;
+      size = sz;
+    }
+
+    @Override
+    public int compareTo(final Deriv o) {
+      if(cost != o.cost) return cost < o.cost ? -1 : 1;
+      if(size != o.size) return size < o.size ? -1 : 1;
+      if(link != o.link) return link < o.link ? -1 : 1;
+      if(pred != o.pred) return pred < o.pred ? -1 : 1;
+      return child < o.child ? -1 : child > o.child ? 1 : 0;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if(!(obj instanceof Deriv)) return false;
+      final Deriv o = (Deriv) obj;
+      return link == o.link && pred == o.pred && child == o.child;
+    }
+
+    @Override
+    public int hashCode() {
+      return (link * HASH_CODE_PRIME + pred) * HASH_CODE_PRIME + child;
+    }
+  }
+
+}
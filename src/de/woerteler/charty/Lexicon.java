@@ -0,0 +1,247 @@
+package de.woerteler.charty;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.woerteler.util.IntList;
+
+/**
+ * Immutable map from symbol names to their IDs, stored as a trie in a few
+ * primitive arrays. Nodes are numbered in breadth-first order, so the
+ * children of a node are consecutive and sorted by their label, and are found
+ * by binary search. Every node knows its parent, so the names themselves are
+ * not stored but spelled out from the trie on request.
+ *
+ * <p>Looking up a name does not allocate, and with the shared prefixes of
+ * large lexicons the trie takes far less memory than a hash map of
+ * strings.</p>
+ *
+ * @author Leo Woerteler
+ */
+final class Lexicon {
+
+  /** Children of every node, from {@code first[n]} to {@code first[n + 1]}. */
+  private final int[] first;
+  /** Label of the edge leading to every node. */
+  private final char[] labels;
+  /** Parent of every node, {@code -1} for the root. */
+  private final int[] parents;
+  /** Symbol ID of every node, {@code -1} if no name ends there. */
+  private final int[] values;
+  /** Node of every symbol, indexed by symbol ID. */
+  private final int[] nodes;
+
+  /**
+   * Constructor taking the arrays of a trie.
+   *
+   * @param f first children
+   * @param l labels
+   * @param p parents
+   * @param v symbol IDs
+   * @param n nodes of the symbols
+   */
+  private Lexicon(final int[] f, final char[] l, final int[] p, final int[] v,
+      final int[] n) {
+    first = f;
+    labels = l;
+    parents = p;
+    values = v;
+    nodes = n;
+  }
+
+  /**
+   * Builds the trie for the given names.
+   *
+   * @param names distinct symbol names, indexed by ID
+   */
+  Lexicon(final String[] names) {
+    // every node covers a range of the names sharing its prefix, which is
+    // sorted by the next character when the node is expanded
+    final int[] order = new int[names.length], chars = new int[names.length];
+    for(int i = 0; i < order.length; i++) order[i] = i;
+    final int[] scratch = new int[2 * names.length];
+    final IntList los = new IntList(), his = new IntList();
+    final IntList fs = new IntList(), ps = new IntList(), vs = new IntList();
+    final StringBuilder ls = new StringBuilder();
+    final int[] ns = new int[names.length];
+    los.add(0);
+    his.add(order.length);
+    ps.add(-1);
+    ls.append('\0');
+    for(int n = 0, depth = 0, level = 1; n < los.size(); n++) {
+      if(n == level) {
+        // first node of the next level
+        depth++;
+        level = los.size();
+      }
+      int lo = los.get(n);
+      final int hi = his.get(n);
+      fs.add(los.size());
+
+      // the name ending here, if any, comes first
+      for(int i = lo; i < hi; i++) {
+        final String name = names[order[i]];
+        chars[i] = name.length() == depth ? -1 : name.charAt(depth);
+      }
+      sort(order, chars, scratch, lo, hi);
+      final int value = lo < hi && chars[lo] < 0 ? order[lo++] : -1;
+      if(value >= 0) ns[value] = n;
+      vs.add(value);
+
+      while(lo < hi) {
+        final int c = chars[lo];
+        int k = lo + 1;
+        while(k < hi && chars[k] == c) k++;
+        los.add(lo);
+        his.add(k);
+        ps.add(n);
+        ls.append((char) c);
+        lo = k;
+      }
+    }
+    fs.add(los.size());
+
+    first = fs.toArray();
+    labels = ls.toString().toCharArray();
+    parents = ps.toArray();
+    values = vs.toArray();
+    nodes = ns;
+  }
+
+  /**
+   * Sorts a range of names by their next characters. Within a range all
+   * names share a prefix, so the characters are mostly equal or close to each
+   * other and a counting sort is used; only ranges spanning a wide range of
+   * characters are sorted by comparison.
+   *
+   * @param order IDs of the names, the range of which is sorted
+   * @param chars next characters, parallel to {@code order}, {@code -1} for
+   *   names ending before
+   * @param scratch scratch space of twice the size of {@code order}
+   * @param lo start of the range
+   * @param hi end of the range
+   */
+  private static void sort(final int[] order, final int[] chars,
+      final int[] scratch, final int lo, final int hi) {
+    int min = Integer.MAX_VALUE, max = -1;
+    for(int i = lo; i < hi; i++) {
+      min = Math.min(min, chars[i]);
+      max = Math.max(max, chars[i]);
+    }
+    if(min >= max) return;
+
+    if(max - min <= 256) {
+      final int[] counts = new int[max - min + 2];
+      for(int i = lo; i < hi; i++) counts[chars[i] - min + 1]++;
+      for(int c = 1; c < counts.length; c++) counts[c] += counts[c - 1];
+      final int off = order.length;
+      for(int i = lo; i < hi; i++) {
+        final int p = lo + counts[chars[i] - min]++;
+        scratch[p] = order[i];
+        scratch[off + p] = chars[i];
+      }
+      System.arraycopy(scratch, lo, order, lo, hi - lo);
+      System.arraycopy(scratch, off + lo, chars, lo, hi - lo);
+    } else {
+      final long[] keys = new long[hi - lo];
+      for(int i = lo; i < hi; i++) {
+        keys[i - lo] = (long) chars[i] << 32 | order[i];
+      }
+      Arrays.sort(keys);
+      for(int i = lo; i < hi; i++) {
+        order[i] = (int) keys[i - lo];
+        chars[i] = (int) (keys[i - lo] >> 32);
+      }
+    }
+  }
+
+  /**
+   * Number of names.
+   *
+   * @return number of names
+   */
+  int size() {
+    return nodes.length;
+  }
+
+  /**
+   * Returns the ID of the given name.
+   *
+   * @param name name
+   * @return ID, {@code -1} if the name is unknown
+   */
+  int get(final String name) {
+    int n = 0;
+    for(int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      int lo = first[n], hi = first[n + 1] - 1;
+      n = -1;
+      while(lo <= hi) {
+        final int mid = lo + hi >>> 1;
+        final char l = labels[mid];
+        if(l < c) {
+          lo = mid + 1;
+        } else if(l > c) {
+          hi = mid - 1;
+        } else {
+          n = mid;
+          break;
+        }
+      }
+      if(n < 0) return -1;
+    }
+    return values[n];
+  }
+
+  /**
+   * Spells out the name with the given ID.
+   *
+   * @param id ID
+   * @return name
+   */
+  String name(final int id) {
+    final int node = nodes[id];
+    int len = 0;
+    for(int n = node; n > 0; n = parents[n]) len++;
+    final char[] cs = new char[len];
+    for(int n = node; n > 0; n = parents[n]) cs[--len] = labels[n];
+    return new String(cs);
+  }
+
+  /**
+   * Writes the trie.
+   *
+   * @param out output
+   * @throws IOException I/O exception
+   */
+  void write(final DataOutputStream out) throws IOException {
+    out.writeInt(nodes.length);
+    out.writeInt(labels.length);
+    for(final int f : first) out.writeInt(f);
+    for(final char l : labels) out.writeChar(l);
+    for(final int p : parents) out.writeInt(p);
+    for(final int v : values) out.writeInt(v);
+    for(final int n : nodes) out.writeInt(n);
+  }
+
+  /**
+   * Reads a trie written by {@link #write(DataOutputStream)}.
+   *
+   * @param buf buffer
+   * @return lexicon
+   */
+  static Lexicon read(final ByteBuffer buf) {
+    final int size = buf.getInt(), count = buf.getInt();
+    final int[] f = Grammar.ints(buf, count + 1);
+    final char[] l = new char[count];
+    buf.asCharBuffer().get(l);
+    buf.position(buf.position() + 2 * count);
+    final int[] p = Grammar.ints(buf, count);
+    final int[] v = Grammar.ints(buf, count);
+    final int[] n = Grammar.ints(buf, size);
+    return new Lexicon(f, l, p, v, n);
+  }
+
+}
@@ -0,0 +1,101 @@
+package de.woerteler.charty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chart storing every edge as an {@link Edge} object. Duplicate edges are
+ * detected through a hash map.
+ *
+ * @author Leo Woerteler
+ */
+final class ObjectChart extends Chart {
+
+  /** List of edges. */
+  private final List<Edge> edges = new ArrayList<Edge>();
+  /** Hash table of all edges in the chart, for duplicate detection. */
+  private final Map<Edge, Edge> interned = new HashMap<Edge, Edge>();
+
+  /**
+   * Constructor.
+   *
+   * @param g grammar
+   */
+  ObjectChart(final Grammar g) {
+    super(g);
+  }
+
+  @Override
+  int size() {
+    return edges.size();
+  }
+
+  @Override
+  int add(final int start, final int end, final int dot, final int rule) {
+    final Edge nw = new Edge(edges.size(), start, end, dot, rule,
+        next(dot, rule));
+    final Edge old = interned.get(nw);
+    if(old != null) return old.id;
+    interned.put(nw, nw);
+    edges.add(nw);
+    return nw.id;
+  }
+
+  @Override
+  void truncate(final int n) {
+    for(int e = edges.size(); --e >= n;) interned.remove(edges.remove(e));
+  }
+
+  @Override
+  int start(final int e) {
+    return edges.get(e).start;
+  }
+
+  @Override
+  int end(final int e) {
+    return edges.get(e).end;
+  }
+
+  @Override
+  int dot(final int e) {
+    return edges.get(e).dot;
+  }
+
+  @Override
+  int rule(final int e) {
+    return edges.get(e).rule;
+  }
+
+  @Override
+  int next(final int e) {
+    return edges.get(e).next;
+  }
+
+  @Override
+  void link(final int e, final int pred, final int child) {
+    edges.get(e).link(pred, child);
+  }
+
+  @Override
+  void link(final int e, final int l, final int pred, final int child) {
+    edges.get(e).link(l, pred, child);
+  }
+
+  @Override
+  int links(final int e) {
+    return edges.get(e).links();
+  }
+
+  @Override
+  int pred(final int e, final int l) {
+    return edges.get(e).pred(l);
+  }
+
+  @Override
+  int child(final int e, final int l) {
+    return edges.get(e).child(l);
+  }
+
+}
@@ -0,0 +1,293 @@
+package de.woerteler.charty;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses a sequence of inputs against the same grammar on several threads.
+ * The results are returned in input order. Only a bounded number of inputs
+ * is read ahead, so arbitrarily long sequences can be processed in constant
+ * memory as long as the results are consumed. The input iterator is only
+ * ever accessed from the thread consuming the results.
+ *
+ * <p>The batch keeps counters of the work done so far, which can be queried
+ * from any thread. The worker threads are stopped when all results have been
+ * returned, or when {@link #close()} is called.</p>
+ *
+ * @author Leo Woerteler
+ */
+public final class ParseBatch implements Iterator<ParseBatch.Result> {
+
+  /** Number of inputs read ahead per thread. */
+  private static final int WINDOW = 8;
+
+  /** Grammar. */
+  private final Grammar grammar;
+  /** Parser options. */
+  private final ParserOptions options;
+  /** Inputs. */
+  private final Iterator<String[]> input;
+  /** Maximum number of inputs being parsed at the same time. */
+  private final int window;
+  /** Worker threads. */
+  private final ExecutorService pool;
+  /** Results not yet returned, in input order. */
+  private final Queue<Future<Result>> pending = new ArrayDeque<Future<Result>>();
+  /** Index of the next input to be read. */
+  private long read;
+
+  /** Start time in nanoseconds. */
+  private final long started = System.nanoTime();
+  /** Number of parsed inputs. */
+  private final AtomicLong sentences = new AtomicLong();
+  /** Number of inputs that could not be parsed. */
+  private final AtomicLong failures = new AtomicLong();
+  /** Number of parsed tokens. */
+  private final AtomicLong tokens = new AtomicLong();
+  /** Number of edges created. */
+  private final AtomicLong edges = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param g grammar
+   * @param in inputs
+   * @param threads number of threads
+   * @param opts parser options
+   */
+  ParseBatch(final Grammar g, final Iterator<String[]> in, final int threads,
+      final ParserOptions opts) {
+    if(threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
+    }
+    grammar = g;
+    input = in;
+    options = opts.copy();
+    window = threads * WINDOW;
+    pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread t = new Thread(r, "ParseBatch");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    fill();
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !pending.isEmpty();
+  }
+
+  @Override
+  public Result next() {
+    final Future<Result> f = pending.poll();
+    if(f == null) throw new NoSuchElementException();
+    Result res;
+    try {
+      res = f.get();
+    } catch(final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      f.cancel(true);
+      res = new Result(read - pending.size() - 1, null, null,
+          new ParserException("Parsing was interrupted."));
+    } catch(final ExecutionException ex) {
+      close();
+      final Throwable cause = ex.getCause();
+      if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if(cause instanceof Error) throw (Error) cause;
+      throw new IllegalStateException(cause);
+    }
+    fill();
+    return res;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops all worker threads. Inputs that have not been read yet are
+   * skipped, and no further results are returned.
+   */
+  public void close() {
+    pool.shutdownNow();
+    pending.clear();
+  }
+
+  /**
+   * Reads inputs and schedules them until the window is full.
+   */
+  private void fill() {
+    while(pending.size() < window && input.hasNext()) {
+      final long idx = read++;
+      final String[] tok = input.next();
+      pending.add(pool.submit(new Callable<Result>() {
+        @Override
+        public Result call() {
+          return parse(idx, tok);
+        }
+      }));
+    }
+    if(pending.isEmpty()) pool.shutdown();
+  }
+
+  /**
+   * Parses a single input and updates the counters.
+   *
+   * @param idx index of the input
+   * @param tok tokens
+   * @return result
+   */
+  private Result parse(final long idx, final String[] tok) {
+    Result res;
+    try {
+      final ParseForest f =
+          ChartParser.parseForest(grammar, tok, null, options);
+      edges.addAndGet(f.size());
+      res = new Result(idx, tok, f, null);
+    } catch(final ParserException ex) {
+      failures.incrementAndGet();
+      res = new Result(idx, tok, null, ex);
+    }
+    tokens.addAndGet(tok.length);
+    sentences.incrementAndGet();
+    return res;
+  }
+
+  /**
+   * Number of inputs parsed so far, including failed ones.
+   *
+   * @return number of inputs
+   */
+  public long getSentenceCount() {
+    return sentences.get();
+  }
+
+  /**
+   * Number of inputs that could not be parsed so far.
+   *
+   * @return number of failures
+   */
+  public long getFailureCount() {
+    return failures.get();
+  }
+
+  /**
+   * Number of tokens parsed so far.
+   *
+   * @return number of tokens
+   */
+  public long getTokenCount() {
+    return tokens.get();
+  }
+
+  /**
+   * Number of chart edges created so far.
+   *
+   * @return number of edges
+   */
+  public long getEdgeCount() {
+    return edges.get();
+  }
+
+  /**
+   * Time since the batch was started.
+   *
+   * @return elapsed time in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return System.nanoTime() - started;
+  }
+
+  /**
+   * Average number of inputs parsed per second since the batch was started.
+   *
+   * @return throughput
+   */
+  public double getSentencesPerSecond() {
+    return sentences.get() * 1e9 / Math.max(1, getElapsedNanos());
+  }
+
+  /**
+   * Result of parsing a single input of the batch.
+   *
+   * @author Leo Woerteler
+   */
+  public static final class Result {
+    /** Index of the input. */
+    private final long index;
+    /** Tokens. */
+    private final String[] tokens;
+    /** Parse forest, {@code null} if parsing failed. */
+    private final ParseForest forest;
+    /** Error, {@code null} if parsing succeeded. */
+    private final ParserException error;
+
+    /**
+     * Constructor.
+     *
+     * @param idx index of the input
+     * @param tok tokens
+     * @param f parse forest
+     * @param err error
+     */
+    Result(final long idx, final String[] tok, final ParseForest f,
+        final ParserException err) {
+      index = idx;
+      tokens = tok;
+      forest = f;
+      error = err;
+    }
+
+    /**
+     * Position of the input in the batch, starting with {@code 0}.
+     *
+     * @return index
+     */
+    public long getIndex() {
+      return index;
+    }
+
+    /**
+     * The parsed tokens.
+     *
+     * @return tokens, {@code null} if parsing was interrupted
+     */
+    public String[] getTokens() {
+      return tokens;
+    }
+
+    /**
+     * Returns the parse forest of the input.
+     *
+     * @return parse forest
+     * @throws ParserException if the input could not be parsed
+     */
+    public ParseForest getForest() throws ParserException {
+      if(error != null) throw error;
+      return forest;
+    }
+
+    /**
+     * Checks whether the input could be parsed.
+     *
+     * @return {@code true} if a forest is available, {@code false} otherwise
+     */
+    public boolean isSuccess() {
+      return error == null;
+    }
+  }
+
+}
@@ -0,0 +1,120 @@
+package de.woerteler.charty;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the resources a parse may use: a deadline, a maximum number of
+ * chart edges and a ceiling on the used heap memory. A budget can also be
+ * cancelled from any thread. The parser checks its budget while it creates
+ * edges, and when a limit is hit it stops and returns what it found so far,
+ * with a {@link ParseForest#getStatus() status} telling why it stopped.
+ *
+ * <p>A budget is passed to the parser in the {@link ParserOptions} and
+ * applies to every parse using them, so cancelling it stops all of them.
+ * The limits are set up front; only {@link #cancel()} may be called while a
+ * parse is running.</p>
+ *
+ * @author Leo Woerteler
+ */
+public final class ParseBudget {
+
+  /** Deadline as {@link System#nanoTime()}, only valid if {@link #timed}. */
+  private long deadline;
+  /** Flag for budgets with a deadline. */
+  private boolean timed;
+  /** Maximum number of edges in the chart. */
+  private int maxEdges = Integer.MAX_VALUE;
+  /** Maximum number of bytes used on the heap. */
+  private long maxHeap = Long.MAX_VALUE;
+  /** Cancellation flag. */
+  private volatile boolean cancelled;
+
+  /**
+   * Sets a time limit. The clock starts now, not when parsing starts, so
+   * that the limit also covers the time spent waiting for the parser.
+   *
+   * @param time time limit, not negative
+   * @param unit unit of the time limit
+   * @return this instance, for chaining
+   */
+  public ParseBudget timeLimit(final long time, final TimeUnit unit) {
+    if(time < 0) {
+      throw new IllegalArgumentException("Invalid time limit: " + time);
+    }
+    deadline = System.nanoTime() + unit.toNanos(time);
+    timed = true;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of edges in the chart. A single edge can cause
+   * several new ones, so the limit may be exceeded by a few edges.
+   *
+   * @param n maximum number of edges, not negative
+   * @return this instance, for chaining
+   */
+  public ParseBudget maxEdges(final int n) {
+    if(n < 0) throw new IllegalArgumentException("Invalid edge limit: " + n);
+    maxEdges = n;
+    return this;
+  }
+
+  /**
+   * Sets a ceiling on the heap memory used by the whole virtual machine.
+   * Unreachable objects count until they are collected, so the ceiling
+   * should leave room for garbage.
+   *
+   * @param bytes maximum number of used bytes, not negative
+   * @return this instance, for chaining
+   */
+  public ParseBudget maxHeap(final long bytes) {
+    if(bytes < 0) {
+      throw new IllegalArgumentException("Invalid heap limit: " + bytes);
+    }
+    maxHeap = bytes;
+    return this;
+  }
+
+  /**
+   * Cancels all parses using this budget. May be called from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Checks whether this budget was cancelled.
+   *
+   * @return result of check
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Checks whether a limit of this budget is exceeded. Reading the clock and
+   * the heap size is comparatively expensive, so the caller decides whether
+   * they are checked, too.
+   *
+   * @param edges current number of edges
+   * @param all flag for checking the time and the heap limit
+   * @return the limit that is exceeded, {@code null} if there is none
+   */
+  ParseForest.Status check(final int edges, final boolean all) {
+    if(cancelled) return ParseForest.Status.CANCELLED;
+    if(edges > maxEdges) return ParseForest.Status.EDGE_LIMIT;
+    if(all) {
+      if(timed && System.nanoTime() - deadline > 0) {
+        return ParseForest.Status.TIME_LIMIT;
+      }
+      if(maxHeap != Long.MAX_VALUE) {
+        final Runtime rt = Runtime.getRuntime();
+        if(rt.totalMemory() - rt.freeMemory() > maxHeap) {
+          return ParseForest.Status.HEAP_LIMIT;
+        }
+      }
+    }
+    return null;
+  }
+
+}
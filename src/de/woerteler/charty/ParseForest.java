@@ -0,0 +1,274 @@
+package de.woerteler.charty;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The shared packed parse forest produced by the {@link ChartParser}. It
+ * consists of the parser's chart, in which every edge keeps all alternative
+ * derivations, and the inactive edges spanning the whole input. The
+ * individual {@link ParseTree}s are only unpacked on request, either all at
+ * once, lazily through an iterator, or individually by their position.
+ *
+ * @author Leo Woerteler
+ */
+public final class ParseForest implements Iterable<ParseTree> {
+
+  /**
+   * Outcome of the parse that produced a forest.
+   *
+   * @author Leo Woerteler
+   */
+  public enum Status {
+    /** The parse ran to completion. */
+    COMPLETE,
+    /** The parse was cancelled. */
+    CANCELLED,
+    /** The time limit was exceeded. */
+    TIME_LIMIT,
+    /** The maximum number of edges was exceeded. */
+    EDGE_LIMIT,
+    /** The heap ceiling was exceeded. */
+    HEAP_LIMIT
+  }
+
+  /** Grammar. */
+  private final Grammar grammar;
+  /** The chart. */
+  private final Chart chart;
+  /** Number of edges in the chart when this forest was created. */
+  private final int edges;
+  /** IDs of the inactive edges spanning the whole input. */
+  private final int[] roots;
+  /** Outcome of the parse. */
+  private final Status status;
+
+  /** Unpacked parse trees, {@code null} until requested. */
+  private ParseTree[] trees;
+  /** Number of trees per edge, {@code null} until requested. */
+  private BigInteger[] counts;
+  /** Total number of trees, {@code null} until requested. */
+  private BigInteger total;
+
+  /**
+   * Constructor.
+   *
+   * @param c the chart
+   * @param rts IDs of the root edges
+   * @param st outcome of the parse
+   */
+  ParseForest(final Chart c, final int[] rts, final Status st) {
+    grammar = c.grammar;
+    chart = c;
+    edges = c.size();
+    roots = rts;
+    status = st;
+  }
+
+  /**
+   * Returns the outcome of the parse. If the parser ran out of its
+   * {@link ParseBudget budget}, the forest only contains the trees found
+   * before it stopped: those of the longest prefix of the input that was
+   * processed completely, or none if several threads were used.
+   *
+   * @return outcome of the parse
+   */
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Number of edges in the chart.
+   *
+   * @return number of edges
+   */
+  public int size() {
+    return edges;
+  }
+
+  /**
+   * Number of packed root edges, i.e. of distinct rules with which the whole
+   * input can be analyzed.
+   *
+   * @return number of roots
+   */
+  public int getRootCount() {
+    return roots.length;
+  }
+
+  /**
+   * Unpacks all parse trees of this forest. The trees are built on the first
+   * call and cached afterwards. Use {@link #iterator()} to avoid holding all
+   * trees in memory at once. The trees of a weighted grammar are returned in
+   * {@link #ranked() ranked} order, best first.
+   *
+   * @return all parse trees
+   */
+  public synchronized ParseTree[] getTrees() {
+    if(trees == null) {
+      final List<ParseTree> res = new ArrayList<ParseTree>();
+      final Iterator<ParseTree> it = grammar.isWeighted() ? ranked()
+          : iterator();
+      while(it.hasNext()) res.add(it.next());
+      trees = res.toArray(new ParseTree[res.size()]);
+    }
+    return trees;
+  }
+
+  /**
+   * Returns the exact number of parse trees in this forest. The trees are
+   * counted on the packed chart without unpacking them.
+   *
+   * @return number of trees
+   */
+  public synchronized BigInteger count() {
+    if(total == null) {
+      counts = new BigInteger[edges];
+      BigInteger n = BigInteger.ZERO;
+      for(final int r : roots) n = n.add(count(r));
+      total = n;
+    }
+    return total;
+  }
+
+  /**
+   * Returns the number of trees of the given edge, or of the partial trees
+   * left of its dot if the edge is active.
+   *
+   * @param id ID of the edge
+   * @return number of (partial) trees
+   */
+  private BigInteger count(final int id) {
+    BigInteger n = counts[id];
+    if(n == null) {
+      final int links = chart.links(id);
+      if(links == 0) {
+        n = BigInteger.ONE;
+      } else {
+        n = BigInteger.ZERO;
+        for(int l = 0; l < links; l++) n = n.add(count(id, l));
+      }
+      counts[id] = n;
+    }
+    return n;
+  }
+
+  /**
+   * Returns the number of (partial) trees of one derivation of an edge.
+   *
+   * @param id ID of the edge
+   * @param l derivation
+   * @return number of (partial) trees
+   */
+  private BigInteger count(final int id, final int l) {
+    final int pred = chart.pred(id, l);
+    final BigInteger c = count(chart.child(id, l));
+    return pred < 0 ? c : count(pred).multiply(c);
+  }
+
+  /**
+   * Builds the parse tree at the given position without unpacking any other
+   * trees. The positions are the same as in the order of {@link #iterator()}.
+   *
+   * @param pos position of the tree, starting with {@code 0}
+   * @return parse tree
+   * @throws IndexOutOfBoundsException if there is no tree at that position
+   */
+  public synchronized ParseTree get(final BigInteger pos) {
+    if(pos.signum() < 0 || pos.compareTo(count()) >= 0) {
+      throw new IndexOutOfBoundsException("Tree " + pos + " of " + total);
+    }
+    BigInteger p = pos;
+    for(final int r : roots) {
+      final BigInteger c = count(r);
+      if(p.compareTo(c) < 0) return unrank(r, p);
+      p = p.subtract(c);
+    }
+    throw new IllegalStateException();
+  }
+
+  /**
+   * Draws a parse tree uniformly at random from all trees of this forest.
+   *
+   * @param rnd source of randomness
+   * @return parse tree, or {@code null} if the forest is empty
+   */
+  public ParseTree sample(final Random rnd) {
+    final BigInteger n = count();
+    if(n.signum() == 0) return null;
+    BigInteger pos;
+    do {
+      pos = new BigInteger(n.bitLength(), rnd);
+    } while(pos.compareTo(n) >= 0);
+    return get(pos);
+  }
+
+  /**
+   * Builds the tree at the given position among the trees of an inactive edge.
+   *
+   * @param id ID of the edge
+   * @param pos position
+   * @return parse tree
+   */
+  private ParseTree unrank(final int id, final BigInteger pos) {
+    final int rule = chart.rule(id);
+    if(chart.links(id) == 0) return ParseTree.lexical(grammar, rule);
+    final List<ParseTree> kids = new ArrayList<ParseTree>(grammar.length(rule));
+    unrank(id, pos, kids);
+    return ParseTree.inner(grammar, rule, kids);
+  }
+
+  /**
+   * Collects the subtrees left of the dot of the partial tree at the given
+   * position among those of an edge. The child varies fastest, then the
+   * predecessor, then the derivation.
+   *
+   * @param id ID of the edge
+   * @param pos position
+   * @param kids list to add the subtrees to
+   */
+  private void unrank(final int id, final BigInteger pos,
+      final List<ParseTree> kids) {
+    BigInteger p = pos;
+    for(int l = 0;; l++) {
+      final BigInteger c = count(id, l);
+      if(p.compareTo(c) < 0) {
+        final int pred = chart.pred(id, l), child = chart.child(id, l);
+        final BigInteger[] qr = p.divideAndRemainder(count(child));
+        if(pred >= 0) unrank(pred, qr[0], kids);
+        kids.add(ParseTree.chain(grammar, pred, unrank(child, qr[1])));
+        return;
+      }
+      p = p.subtract(c);
+    }
+  }
+
+  /**
+   * Returns an iterator that unpacks the parse trees of this forest one by
+   * one. Roots come in the order of their rules in the grammar, and the
+   * alternatives of a node in the order of the split points and rules of their
+   * last child.
+   *
+   * @return lazy tree iterator
+   */
+  @Override
+  public Iterator<ParseTree> iterator() {
+    return new ForestIterator(chart, roots);
+  }
+
+  /**
+   * Returns an iterator that unpacks the parse trees of this forest one by
+   * one, ranked by cost: for weighted grammars, trees with the highest
+   * product of rule weights come first; ties and the trees of unweighted
+   * grammars are ranked by size, with fewer rule applications first.
+   *
+   * @return lazy ranked tree iterator
+   */
+  public Iterator<ParseTree> ranked() {
+    return new KBestIterator(chart, roots);
+  }
+
+}
@@ -0,0 +1,108 @@
+package de.woerteler.charty;
+
+/**
+ * Incremental parse of an input that is read token by token. Every token is
+ * processed as soon as it is added, so that all derivations over the input
+ * read so far are in the chart at any time. Sessions are created by
+ * {@link ChartParser#session(Grammar, ParserInfoListener, ParserOptions)} and
+ * must not be used by several threads at the same time.
+ *
+ * <p>Since the length of the whole input and the following tokens are not
+ * known in advance, active edges are not pruned by the remaining input.
+ * Parse forests returned by a session stay valid when more tokens are
+ * added, but not when the tokens they cover are {@link #truncate(int)
+ * removed}.</p>
+ *
+ * <p>If the {@link ParseBudget budget} runs out while a token is processed,
+ * the token is dropped together with all following ones, and the
+ * {@link #getForest() forest} tells why. Setting a new budget or truncating
+ * the input lets the session continue.</p>
+ *
+ * @author Leo Woerteler
+ */
+public final class ParseSession {
+
+  /** The underlying parser. */
+  private final ChartParser parser;
+
+  /**
+   * Constructor.
+   *
+   * @param p parser without any tokens
+   */
+  ParseSession(final ChartParser p) {
+    parser = p;
+  }
+
+  /**
+   * Adds the next token of the input and processes it. If the token is
+   * unknown, the session is left unchanged.
+   *
+   * @param tok token
+   * @return this session, for chaining
+   * @throws ParserException if the token is unknown
+   */
+  public ParseSession push(final String tok) throws ParserException {
+    parser.push(tok);
+    return this;
+  }
+
+  /**
+   * Removes the tokens from the given position on, so that the input can be
+   * continued differently. All work done for the remaining tokens is kept.
+   * Parse forests returned before become invalid if tokens they cover are
+   * removed.
+   *
+   * @param n number of tokens to keep
+   * @return this session, for chaining
+   */
+  public ParseSession truncate(final int n) {
+    if(n < 0) throw new IllegalArgumentException("Invalid size: " + n);
+    parser.truncate(n);
+    return this;
+  }
+
+  /**
+   * Sets the resource limits for the tokens added from now on.
+   *
+   * @param b budget, {@code null} for no limits
+   * @return this session, for chaining
+   */
+  public ParseSession budget(final ParseBudget b) {
+    parser.budget(b);
+    return this;
+  }
+
+  /**
+   * Number of tokens added so far.
+   *
+   * @return number of tokens
+   */
+  public int size() {
+    return parser.length();
+  }
+
+  /**
+   * Checks whether the tokens added so far are the beginning of at least one
+   * input that has a parse tree. Once this is {@code false}, it stays
+   * {@code false} whatever tokens are added.
+   *
+   * @return {@code true} if the input can still be completed,
+   *   {@code false} otherwise
+   */
+  public boolean isViable() {
+    return parser.isViable();
+  }
+
+  /**
+   * Returns the parse forest of the tokens added so far, which is empty if
+   * they cannot be parsed as a whole. The listener of the session receives
+   * a listing of the whole chart, as after a complete parse.
+   *
+   * @return parse forest
+   */
+  public ParseForest getForest() {
+    return parser.forest();
+  }
+
+}
@@ -1,36 +1,166 @@
 package de.woerteler.charty;
 
-import de.woerteler.charty.ChartParser.Edge;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 /**
- * Class representing a parse tree generated by the {@link ChartParser}.
- * 
+ * Class representing a parse tree generated by the {@link ChartParser}. Every
+ * node of the tree is a parse tree itself; the leaves are the input tokens.
+ * Subtrees may be shared between the trees of the same {@link ParseForest}.
+ *
  * @author Leo Woerteler
  */
-public final class ParseTree {
+public final class ParseTree implements Iterable<ParseTree> {
 
-  /** Root edge of this tree. */
-  private final Edge edge;
+  /** Empty child array of leaves. */
+  private static final ParseTree[] LEAF = { };
+
+  /** Label of this node. */
+  private final String label;
+  /** Children of this node. */
+  private final ParseTree[] children;
+
+  /**
+   * Constructor for inner nodes.
+   *
+   * @param lbl label
+   * @param kids children of this node
+   */
+  ParseTree(final String lbl, final ParseTree... kids) {
+    label = lbl;
+    children = kids;
+  }
+
+  /**
+   * Constructor for leaves.
+   *
+   * @param token the input token
+   */
+  ParseTree(final String token) {
+    this(token, LEAF);
+  }
+
+  /**
+   * Creates the tree of an edge that was read directly from the input.
+   *
+   * @param g grammar
+   * @param rule rule of the lexical edge
+   * @return parse tree
+   */
+  static ParseTree lexical(final Grammar g, final int rule) {
+    final String[] tokens = g.labels(rule);
+    final ParseTree[] leaves = new ParseTree[tokens.length];
+    for(int i = 0; i < leaves.length; i++) leaves[i] = new ParseTree(tokens[i]);
+    return new ParseTree(g.symbol(g.lhs(rule)), leaves);
+  }
+
+  /**
+   * Creates the tree of an inactive edge from the subtrees of its children.
+   *
+   * @param g grammar
+   * @param rule rule of the inactive edge
+   * @param kids subtrees
+   * @return parse tree
+   */
+  static ParseTree inner(final Grammar g, final int rule,
+      final List<ParseTree> kids) {
+    final ParseTree[] children = kids.toArray(new ParseTree[kids.size()]);
+    return new ParseTree(g.symbol(g.lhs(rule)), children);
+  }
+
+  /**
+   * Creates the subtree below the last rule of a unary chain: the tree of
+   * the consumed edge, wrapped in the nodes of the other rules of the chain.
+   *
+   * @param g grammar
+   * @param pred predecessor of the backpointer pair
+   * @param child tree of the consumed edge
+   * @return parse tree, {@code child} itself if no chain was applied
+   */
+  static ParseTree chain(final Grammar g, final int pred,
+      final ParseTree child) {
+    final int c = Chart.chain(pred);
+    return c < 0 ? child : wrap(g, g.chainParent(c), child);
+  }
+
+  /**
+   * Wraps a tree in the nodes of all rules of a unary chain.
+   *
+   * @param g grammar
+   * @param chain chain ID, {@code -1} for the empty chain
+   * @param child tree of the consumed edge
+   * @return parse tree
+   */
+  private static ParseTree wrap(final Grammar g, final int chain,
+      final ParseTree child) {
+    if(chain < 0) return child;
+    final ParseTree inner = wrap(g, g.chainParent(chain), child);
+    return new ParseTree(g.symbol(g.lhs(g.chainRule(chain))), inner);
+  }
+
+  /**
+   * The label of this node, i.e. the left-hand side of the applied rule for
+   * inner nodes and the input token for leaves.
+   *
+   * @return label
+   */
+  public String getLabel() {
+    return label;
+  }
+
+  /**
+   * Checks whether this node is a leaf, i.e. an input token.
+   *
+   * @return {@code true} if this node has no children, {@code false} otherwise
+   */
+  public boolean isLeaf() {
+    return children.length == 0;
+  }
+
+  @Override
+  public Iterator<ParseTree> iterator() {
+    return Arrays.asList(children).iterator();
+  }
+
+  /**
+   * Creates a representation of this subtree in bracketing notation.
+   *
+   * @return representation
+   */
+  public String toLaTeX() {
+    final StringBuilder sb = new StringBuilder();
+    toLaTeX(sb);
+    return sb.toString().trim();
+  }
 
   /**
-   * Constructor.
-   * 
-   * @param e root edge
+   * Recursive {@link #toLaTeX()} helper.
+   *
+   * @param sb string builder for efficiency
    */
-  ParseTree(final Edge e) {
-    edge = e;
+  private void toLaTeX(final StringBuilder sb) {
+    if(isLeaf()) {
+      sb.append(' ').append(label);
+      return;
+    }
+    sb.append(" [.").append(label);
+    for(final ParseTree c : children) {
+      c.toLaTeX(sb);
+    }
+    sb.append(" ]");
   }
 
   /**
    * Get the displayer of this parse tree.
-   * 
+   *
    * @param method The method to draw the syntax tree.
    * @return parse tree displayer
    * @throws Exception if the conversion fails
    */
   public Displayer getDisplayer(final DisplayMethod method)
       throws Exception {
-    return method.getDisplayer(edge);
+    return method.getDisplayer(this);
   }
 
 }
@@ -0,0 +1,93 @@
+package de.woerteler.charty;
+
+/**
+ * Receiver of typed events from the parser. Events only carry IDs and
+ * positions, so firing them allocates nothing; listeners that need text can
+ * format it on demand, for example with {@link Grammar#toString(int)}.
+ * Events above the {@link #getLevel() level} of a listener are never fired,
+ * and a parser without listener does not even check for them.
+ *
+ * <p>A listener that is set in the {@link ParserOptions} receives the events
+ * of every parse using them, possibly from several threads at once.</p>
+ *
+ * @author Leo Woerteler
+ */
+public interface ParserEventListener {
+
+  /**
+   * Detail levels of events, each including the ones before.
+   *
+   * @author Leo Woerteler
+   */
+  enum Level {
+    /** No events. */
+    OFF,
+    /** Parses stopped early because their budget ran out. */
+    SUMMARY,
+    /** Every edge added to the chart. */
+    EDGES,
+    /** All edges of the chart once a parse is done. */
+    CHART
+  }
+
+  /**
+   * Steps of the parser that create edges.
+   *
+   * @author Leo Woerteler
+   */
+  enum Kind {
+    /** Lexical edge of an input token. */
+    LEXICAL,
+    /** Lexical edge of an expected symbol, in the Earley strategy. */
+    SCAN,
+    /** Rule invocation on an inactive edge. */
+    INVOCATION,
+    /** Unary chain applied to an inactive edge. */
+    CHAIN,
+    /** Fundamental rule, combining an active and an inactive edge. */
+    FUNDAMENTAL
+  }
+
+  /**
+   * Returns the level of events this listener receives. It is read once
+   * when a parse starts.
+   *
+   * @return level
+   */
+  Level getLevel();
+
+  /**
+   * Called when an edge is added to the chart.
+   *
+   * @param kind step that created the edge
+   * @param edge ID of the edge
+   * @param start start position
+   * @param end end position
+   * @param dot dot position
+   * @param rule rule ID
+   */
+  void edgeAdded(Kind kind, int edge, int start, int end, int dot, int rule);
+
+  /**
+   * Called for every edge of the chart once a parse is done, in the order of
+   * their IDs. A {@link ParseSession} lists its whole chart every time its
+   * forest is requested.
+   *
+   * @param edge ID of the edge
+   * @param start start position
+   * @param end end position
+   * @param dot dot position
+   * @param rule rule ID
+   * @param active {@code true} if the edge is active
+   */
+  void chartEdge(int edge, int start, int end, int dot, int rule,
+      boolean active);
+
+  /**
+   * Called when a parse stops because its budget ran out.
+   *
+   * @param status the limit that was hit
+   */
+  void stopped(ParseForest.Status status);
+
+}
@@ -0,0 +1,90 @@
+package de.woerteler.charty;
+
+import java.util.Arrays;
+
+/**
+ * Adapter passing the events of the parser to a {@link ParserInfoListener}
+ * as text messages. The messages are only formatted here, so parsers
+ * without listener never build them. They are the same as before the
+ * events were introduced: every added edge under the category of the step
+ * that created it, then the whole chart under {@code "Chart"}, also when a
+ * {@link ParseSession} returns its forest. Edges of unary chains are
+ * reported as rule invocations, which is what they replace.
+ *
+ * @author Leo Woerteler
+ */
+final class ParserInfoAdapter implements ParserEventListener {
+
+  /** Grammar. */
+  private final Grammar grammar;
+  /** Receiver of the messages. */
+  private final ParserInfoListener listener;
+
+  /**
+   * Constructor.
+   *
+   * @param g grammar
+   * @param list receiver of the messages
+   */
+  ParserInfoAdapter(final Grammar g, final ParserInfoListener list) {
+    grammar = g;
+    listener = list;
+  }
+
+  @Override
+  public Level getLevel() {
+    return Level.CHART;
+  }
+
+  @Override
+  public void edgeAdded(final Kind kind, final int edge, final int start,
+      final int end, final int dot, final int rule) {
+    listener.info(category(kind), "Adding edge: "
+        + toString(start, end, dot, rule));
+  }
+
+  @Override
+  public void chartEdge(final int edge, final int start, final int end,
+      final int dot, final int rule, final boolean active) {
+    listener.info("Chart", (active ? "Active: " : "Inactive: ")
+        + toString(start, end, dot, rule));
+  }
+
+  @Override
+  public void stopped(final ParseForest.Status status) {
+    listener.info("Budget", "Parsing stopped: " + status);
+  }
+
+  /**
+   * Returns the message category of a parser step.
+   *
+   * @param kind parser step
+   * @return category
+   */
+  private static String category(final Kind kind) {
+    switch(kind) {
+      case LEXICAL: return "I";
+      case SCAN: return "S";
+      case INVOCATION:
+      case CHAIN: return "IV";
+      default: return "FR";
+    }
+  }
+
+  /**
+   * Returns a string representation of an edge.
+   *
+   * @param start start position
+   * @param end end position
+   * @param dot dot position
+   * @param rule rule ID
+   * @return string representation
+   */
+  private String toString(final int start, final int end, final int dot,
+      final int rule) {
+    return String.format("(%d, %d, %d, %s, %s)", start, end, dot,
+        grammar.symbol(grammar.lhs(rule)),
+        Arrays.toString(grammar.labels(rule)));
+  }
+
+}
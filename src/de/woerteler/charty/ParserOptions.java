@@ -0,0 +1,229 @@
+package de.woerteler.charty;
+
+/**
+ * Options controlling how the {@link ChartParser} works. Apart from the start
+ * symbol, the beam and the budget, the options never change the resulting
+ * parse trees, only the time and memory needed to compute them.
+ *
+ * @author Leo Woerteler
+ */
+public final class ParserOptions {
+
+  /**
+   * Storage backends for the chart.
+   *
+   * @author Leo Woerteler
+   */
+  public enum Storage {
+    /** One object per edge. */
+    OBJECTS,
+    /** Primitive parallel arrays, without any objects per edge. */
+    ARRAYS
+  }
+
+  /**
+   * Parsing strategies.
+   *
+   * @author Leo Woerteler
+   */
+  public enum Engine {
+    /** Bottom-up parsing, invoking every rule whose leftmost symbol was found. */
+    BOTTOM_UP,
+    /** Earley parsing, only invoking rules that were predicted top-down. */
+    EARLEY
+  }
+
+  /** Chart storage. */
+  private Storage storage = Storage.OBJECTS;
+  /** Parsing strategy. */
+  private Engine engine = Engine.BOTTOM_UP;
+  /** Start symbol, {@code null} if every symbol may span the input. */
+  private String start;
+  /** Number of threads used for a single input. */
+  private int threads = 1;
+  /** Beam width, {@link Double#POSITIVE_INFINITY} if nothing is pruned. */
+  private double beam = Double.POSITIVE_INFINITY;
+  /** Resource limits, {@code null} if there are none. */
+  private ParseBudget budget;
+  /** Listener for parser events, {@code null} if there is none. */
+  private ParserEventListener events;
+
+  /**
+   * Sets the storage backend of the chart.
+   *
+   * @param s storage backend
+   * @return this instance, for chaining
+   */
+  public ParserOptions storage(final Storage s) {
+    if(s == null) throw new NullPointerException("storage");
+    storage = s;
+    return this;
+  }
+
+  /**
+   * Returns the storage backend of the chart.
+   *
+   * @return storage backend
+   */
+  public Storage getStorage() {
+    return storage;
+  }
+
+  /**
+   * Sets the parsing strategy.
+   *
+   * @param e parsing strategy
+   * @return this instance, for chaining
+   */
+  public ParserOptions engine(final Engine e) {
+    if(e == null) throw new NullPointerException("engine");
+    engine = e;
+    return this;
+  }
+
+  /**
+   * Returns the parsing strategy.
+   *
+   * @return parsing strategy
+   */
+  public Engine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Sets the start symbol. Only trees with the start symbol at their root
+   * are returned; {@code null} (the default) accepts trees of any symbol.
+   *
+   * @param sym start symbol, may be {@code null}
+   * @return this instance, for chaining
+   */
+  public ParserOptions start(final String sym) {
+    start = sym;
+    return this;
+  }
+
+  /**
+   * Returns the start symbol.
+   *
+   * @return start symbol, {@code null} if every symbol is accepted
+   */
+  public String getStart() {
+    return start;
+  }
+
+  /**
+   * Sets the number of threads used to parse a single input. With more than
+   * one thread, all chart cells of the same span length are filled in
+   * parallel. Since every cell is then filled without knowing which symbols
+   * are expected at its start, neither left-corner filtering nor the Earley
+   * strategy is applied in this mode; the parse trees are the same. The
+   * threads are taken from a pool shared by all parsers, which has one
+   * thread per processor.
+   *
+   * @param n number of threads, at least {@code 1}
+   * @return this instance, for chaining
+   */
+  public ParserOptions threads(final int n) {
+    if(n < 1) throw new IllegalArgumentException("Invalid thread count: " + n);
+    threads = n;
+    return this;
+  }
+
+  /**
+   * Returns the number of threads used to parse a single input.
+   *
+   * @return number of threads
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Sets the beam width for weighted grammars. A derivation of a symbol over
+   * a span is pruned if its cost exceeds that of the best derivation of the
+   * same symbol and span by more than the width, so a width of
+   * {@code ln 10} drops everything ten times less likely than a competitor.
+   * Pruning only happens in sequential mode and loses trees; the default
+   * width of infinity keeps everything.
+   *
+   * @param width beam width, not negative
+   * @return this instance, for chaining
+   */
+  public ParserOptions beam(final double width) {
+    if(!(width >= 0)) {
+      throw new IllegalArgumentException("Invalid beam width: " + width);
+    }
+    beam = width;
+    return this;
+  }
+
+  /**
+   * Returns the beam width.
+   *
+   * @return beam width
+   */
+  public double getBeam() {
+    return beam;
+  }
+
+  /**
+   * Sets the resource limits of the parse. The same budget applies to every
+   * parse using these options.
+   *
+   * @param b budget, {@code null} (the default) for no limits
+   * @return this instance, for chaining
+   */
+  public ParserOptions budget(final ParseBudget b) {
+    budget = b;
+    return this;
+  }
+
+  /**
+   * Returns the resource limits of the parse.
+   *
+   * @return budget, {@code null} if there are no limits
+   */
+  public ParseBudget getBudget() {
+    return budget;
+  }
+
+  /**
+   * Sets the listener for the events of the parser. It is only used if no
+   * {@link ParserInfoListener} is passed to the parse method, and may be
+   * called from several threads at once when inputs are parsed in a batch.
+   *
+   * @param l listener, {@code null} (the default) for no events
+   * @return this instance, for chaining
+   */
+  public ParserOptions events(final ParserEventListener l) {
+    events = l;
+    return this;
+  }
+
+  /**
+   * Returns the listener for the events of the parser.
+   *
+   * @return listener, {@code null} if there is none
+   */
+  public ParserEventListener getEvents() {
+    return events;
+  }
+
+  /**
+   * Returns a copy of these options.
+   *
+   * @return copy
+   */
+  ParserOptions copy() {
+    final ParserOptions o = new ParserOptions();
+    o.storage = storage;
+    o.engine = engine;
+    o.start = start;
+    o.threads = threads;
+    o.beam = beam;
+    o.budget = budget;
+    o.events = events;
+    return o;
+  }
+
+}
@@ -0,0 +1,328 @@
+package de.woerteler.charty;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.woerteler.util.IntList;
+
+/**
+ * A CKY recognizer that only decides whether a token sequence can be parsed,
+ * without building edges or trees. The grammar is binarized on construction:
+ * every rule with more than two right-hand side symbols is split into binary
+ * rules over intermediate symbols, one for every distinct rule prefix. The
+ * set of symbols spanning a chart cell is stored as a bitset, and two cells
+ * are combined by intersecting the bitset of the right cell word by word with
+ * the right-hand sides that fit each symbol of the left cell. Only left-hand
+ * sides and intermediate symbols ever span a cell, so the bitsets are indexed
+ * by dense IDs given to these alone and terminals take no space in them.
+ *
+ * <p>A recognizer is immutable and can be shared between threads.</p>
+ *
+ * @author Leo Woerteler
+ */
+final class Recognizer {
+
+  /** Grammar. */
+  private final Grammar grammar;
+  /** Dense ID of every symbol, {@code -1} if it is no left-hand side. */
+  private final int[] ids;
+  /** Number of left-hand sides; intermediate symbols come after them. */
+  private final int nonterminals;
+  /** Number of words of a cell's bitset. */
+  private final int words;
+  /** Binary rules, indexed by their left symbol, {@code null} if there are none. */
+  private final Binary[] binary;
+  /** Symbols reachable by unary rules, by dense ID, {@code null} if none. */
+  private final int[][] unary;
+
+  /**
+   * Binarizes the given grammar.
+   *
+   * @param g grammar
+   */
+  Recognizer(final Grammar g) {
+    grammar = g;
+    final int rules = g.ruleCount();
+    ids = new int[g.symbolCount()];
+    Arrays.fill(ids, -1);
+    int m = 0;
+    for(int r = 0; r < rules; r++) {
+      if(ids[g.lhs(r)] < 0) ids[g.lhs(r)] = m++;
+    }
+    nonterminals = m;
+
+    // binary rules as (left, right, parent) triples
+    final IntList triples = new IntList();
+    final Map<Long, Integer> prefixes = new HashMap<Long, Integer>();
+    final IntList[] parents = new IntList[m];
+    rules: for(int r = 0; r < rules; r++) {
+      final int len = g.length(r);
+      if(len == 1) {
+        // rules deriving terminals are applied to the tokens directly
+        final int y = ids[g.rhs(r, 0)];
+        if(y < 0) continue;
+        if(parents[y] == null) parents[y] = new IntList(2);
+        parents[y].add(ids[g.lhs(r)]);
+        continue;
+      }
+      // terminals never span a cell, so rules containing them never apply
+      for(int p = 0; p < len; p++) {
+        if(ids[g.rhs(r, p)] < 0) continue rules;
+      }
+      int left = ids[g.rhs(r, 0)];
+      for(int p = 1; p < len; p++) {
+        final int right = ids[g.rhs(r, p)];
+        final int parent;
+        if(p == len - 1) {
+          parent = ids[g.lhs(r)];
+        } else {
+          final Long key = (long) left << 32 | right;
+          final Integer pre = prefixes.get(key);
+          if(pre != null) {
+            left = pre;
+            continue;
+          }
+          parent = m + prefixes.size();
+          prefixes.put(key, parent);
+        }
+        triples.add(left);
+        triples.add(right);
+        triples.add(parent);
+        left = parent;
+      }
+    }
+
+    final int total = m + prefixes.size();
+    words = total + 63 >>> 6;
+    binary = binary(triples, total);
+    unary = new int[m][];
+    final boolean[] seen = new boolean[m];
+    final IntList res = new IntList();
+    for(int s = 0; s < m; s++) unary[s] = closure(s, parents, seen, res);
+  }
+
+  /**
+   * Builds the index of the binary rules.
+   *
+   * @param triples binary rules as (left, right, parent) triples
+   * @param total total number of symbols
+   * @return binary rules by left symbol
+   */
+  private static Binary[] binary(final IntList triples, final int total) {
+    final long[][] masks = new long[total][];
+    for(int t = 0; t < triples.size(); t += 3) {
+      final int l = triples.get(t), r = triples.get(t + 1);
+      if(masks[l] == null) masks[l] = new long[total + 63 >>> 6];
+      masks[l][r >>> 6] |= 1L << r;
+    }
+
+    final Binary[] bins = new Binary[total];
+    for(int l = 0; l < total; l++) {
+      if(masks[l] != null) bins[l] = new Binary(masks[l]);
+    }
+    for(int t = 0; t < triples.size(); t += 3) {
+      final Binary b = bins[triples.get(t)];
+      final int rank = b.rank(triples.get(t + 1));
+      final int[] ps = b.parents[rank];
+      final int[] nw = new int[ps == null ? 1 : ps.length + 1];
+      if(ps != null) System.arraycopy(ps, 0, nw, 0, ps.length);
+      nw[nw.length - 1] = triples.get(t + 2);
+      b.parents[rank] = nw;
+    }
+    return bins;
+  }
+
+  /**
+   * Computes all symbols that derive the given one by unary rules only.
+   *
+   * @param sym dense ID of a left-hand side
+   * @param parents left-hand sides of the unary rules, by their RHS symbol
+   * @param seen flags for the symbols found, all unset before and after
+   * @param res list for the symbols found, reused between calls
+   * @return the symbols, including {@code sym} itself, or {@code null} if
+   *   there are no other ones
+   */
+  private static int[] closure(final int sym, final IntList[] parents,
+      final boolean[] seen, final IntList res) {
+    if(parents[sym] == null) return null;
+    res.truncate(0);
+    seen[sym] = true;
+    res.add(sym);
+    for(int i = 0; i < res.size(); i++) {
+      final IntList ps = parents[res.get(i)];
+      for(int j = 0; ps != null && j < ps.size(); j++) {
+        final int p = ps.get(j);
+        if(!seen[p]) {
+          seen[p] = true;
+          res.add(p);
+        }
+      }
+    }
+    for(int i = 0; i < res.size(); i++) seen[res.get(i)] = false;
+    return res.toArray();
+  }
+
+  /**
+   * Checks whether the given tokens can be parsed, i.e. whether any symbol
+   * of the grammar derives the whole sequence.
+   *
+   * @param tokens tokens
+   * @return result of the check, {@code false} for unknown tokens
+   */
+  boolean recognize(final String[] tokens) {
+    final int n = tokens.length;
+    if(n == 0) return false;
+
+    // cells are stored by increasing span length, each as a bitset
+    final long[] chart = new long[n * (n + 1) / 2 * words];
+    for(int i = 0; i < n; i++) {
+      final int[] lexical = grammar.lexical(grammar.id(tokens[i]));
+      if(lexical.length == 0) return false;
+      final int cell = cell(n, i, 1);
+      for(final int rule : lexical) set(chart, cell, ids[grammar.lhs(rule)]);
+      close(chart, cell);
+    }
+
+    for(int len = 2; len <= n; len++) {
+      for(int i = 0; i + len <= n; i++) {
+        final int cell = cell(n, i, len);
+        for(int k = 1; k < len; k++) {
+          combine(chart, cell(n, i, k), cell(n, i + k, len - k), cell);
+        }
+        close(chart, cell);
+      }
+    }
+
+    // intermediate symbols only stand for rule prefixes
+    final int root = cell(n, 0, n), last = nonterminals - 1 >>> 6;
+    for(int w = 0; w <= last; w++) {
+      final long mask = w < last ? -1L : -1L >>> (-nonterminals & 63);
+      if((chart[root + w] & mask) != 0) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Adds all symbols obtained by applying binary rules to a symbol of the
+   * left and one of the right cell to the target cell.
+   *
+   * @param chart cells
+   * @param left offset of the left cell
+   * @param right offset of the right cell
+   * @param target offset of the target cell
+   */
+  private void combine(final long[] chart, final int left, final int right,
+      final int target) {
+    for(int w = 0; w < words; w++) {
+      for(long ls = chart[left + w]; ls != 0; ls &= ls - 1) {
+        final Binary b = binary[w << 6 | Long.numberOfTrailingZeros(ls)];
+        if(b == null) continue;
+        for(int t = 0; t < b.words.length; t++) {
+          for(long m = b.bits[t] & chart[right + b.words[t]]; m != 0;
+              m &= m - 1) {
+            final long low = m & -m;
+            final int rank = b.base[t] + Long.bitCount(b.bits[t] & low - 1);
+            for(final int p : b.parents[rank]) set(chart, target, p);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the symbols derivable by unary rules to a cell.
+   *
+   * @param chart cells
+   * @param cell offset of the cell
+   */
+  private void close(final long[] chart, final int cell) {
+    final int last = nonterminals - 1 >>> 6;
+    for(int w = 0; w <= last; w++) {
+      for(long bits = chart[cell + w]; bits != 0; bits &= bits - 1) {
+        final int s = w << 6 | Long.numberOfTrailingZeros(bits);
+        if(s < nonterminals && unary[s] != null) {
+          for(final int p : unary[s]) set(chart, cell, p);
+        }
+      }
+    }
+  }
+
+  /**
+   * Offset of a cell in the chart.
+   *
+   * @param n number of tokens
+   * @param start start position
+   * @param len span length
+   * @return offset
+   */
+  private int cell(final int n, final int start, final int len) {
+    // cells of length l are preceded by those of all shorter spans
+    final int before = (len - 1) * n - (len - 1) * (len - 2) / 2;
+    return (before + start) * words;
+  }
+
+  /**
+   * Sets a bit in a cell.
+   *
+   * @param chart cells
+   * @param cell offset of the cell
+   * @param sym dense ID of the symbol
+   */
+  private static void set(final long[] chart, final int cell, final int sym) {
+    chart[cell + (sym >>> 6)] |= 1L << sym;
+  }
+
+  /**
+   * The binary rules with the same left symbol. The right symbols are stored
+   * as a sparse bitset, which only contains the non-zero words.
+   *
+   * @author Leo Woerteler
+   */
+  private static final class Binary {
+    /** Indexes of the non-zero words. */
+    final int[] words;
+    /** Non-zero words of the bitset of right symbols. */
+    final long[] bits;
+    /** Number of right symbols in all words before each one. */
+    final int[] base;
+    /** Parent symbols, indexed by the rank of the right symbol. */
+    final int[][] parents;
+
+    /**
+     * Constructor.
+     *
+     * @param mask dense bitset of the right symbols
+     */
+    Binary(final long[] mask) {
+      int nz = 0;
+      for(final long m : mask) if(m != 0) nz++;
+      words = new int[nz];
+      bits = new long[nz];
+      base = new int[nz];
+      int t = 0, cnt = 0;
+      for(int w = 0; w < mask.length; w++) {
+        if(mask[w] != 0) {
+          words[t] = w;
+          bits[t] = mask[w];
+          base[t++] = cnt;
+          cnt += Long.bitCount(mask[w]);
+        }
+      }
+      parents = new int[cnt][];
+    }
+
+    /**
+     * Returns the rank of a right symbol among all right symbols.
+     *
+     * @param sym right symbol, must be contained
+     * @return rank
+     */
+    int rank(final int sym) {
+      int t = 0;
+      while(words[t] != sym >>> 6) t++;
+      return base[t] + Long.bitCount(bits[t] & (1L << sym) - 1);
+    }
+  }
+
+}
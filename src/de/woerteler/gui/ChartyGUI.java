@@ -13,8 +13,10 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.SortedMap;
 
 import javax.imageio.ImageIO;
 import javax.swing.ButtonGroup;
@@ -351,10 +353,26 @@ public final class ChartyGUI extends JFrame {
    * @param pos current position
    * @param num current number of parse trees
    */
-  public void showParseTree(final Displayer tree, final int pos, final int num) {
+  public void showParseTree(final Displayer tree, final BigInteger pos,
+      final BigInteger num) {
     treeViewer.showParseTree(tree, pos, num);
   }
 
+  /**
+   * Marks the lines of the grammar editor that contain errors.
+   * 
+   * @param errors error messages by line number, {@code 0} for errors that
+   *   do not refer to a single line
+   */
+  public void showGrammarErrors(final SortedMap<Integer, String> errors) {
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        editor.showErrors(errors);
+      }
+    });
+  }
+
   /** Rewinds the caret position in the grammar editor. */
   public void rewindGrammar() {
     editor.rewind();
@@ -5,7 +5,7 @@ import static de.woerteler.gui.GUIActions.ActionID.*;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
+import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,9 +18,13 @@ import de.woerteler.charty.DisplayMethod;
 import de.woerteler.charty.Displayer;
 import de.woerteler.charty.Grammar;
 import de.woerteler.charty.GrammarSyntaxException;
+import de.woerteler.charty.ParseBudget;
+import de.woerteler.charty.ParseForest;
+import de.woerteler.charty.ParseSession;
 import de.woerteler.charty.ParseTree;
 import de.woerteler.charty.ParserException;
 import de.woerteler.charty.ParserInfoListener;
+import de.woerteler.charty.ParserOptions;
 import de.woerteler.charty.Tokenizer;
 import de.woerteler.gui.GUIActions.ActionID;
 import de.woerteler.latex.LaTeXDisplay;
@@ -70,6 +74,15 @@ public final class Controller implements ParserInfoListener {
   /** Lock for the parse method. */
   private final Object parseLock = new Object();
 
+  /** Session of the last parse, guarded by {@link #parseLock}. */
+  private ParseSession session;
+  /** Grammar of the session. */
+  private Grammar sessionGrammar;
+  /** Tokens of the last parse, the session holds a prefix of them. */
+  private String[] sessionTokens;
+  /** Budget of the latest parse, cancelled when the next one is started. */
+  private ParseBudget budget;
+
   /** The syntax tree render method. */
   private NodeRenderer renderer = INI.getInstance("last", "renderer", NodeRenderer.class,
       DefaultRenderer.class);
@@ -291,12 +304,12 @@ public final class Controller implements ParserInfoListener {
    * @param next direction flag
    */
   public void navigate(final boolean next) {
-    final int pos = model.getParseTreePos();
-    final ParseTree[] trees = model.getParseTrees();
+    final BigInteger pos = model.getParseTreePos();
+    final BigInteger nw = next ? pos.add(BigInteger.ONE) : pos.subtract(BigInteger.ONE);
 
-    if(!next && pos <= 0 || next && pos >= trees.length - 1) return;
+    if(nw.signum() < 0 || nw.compareTo(model.getParseTreeCount()) >= 0) return;
 
-    showTree(pos + (next ? 1 : -1));
+    showTree(nw);
   }
 
   /**
@@ -311,15 +324,15 @@ public final class Controller implements ParserInfoListener {
    * 
    * @param pos The position of the syntax tree in the list of parse trees.
    */
-  public void showTree(final int pos) {
-    final ParseTree[] trees = model.getParseTrees();
-    if(pos < 0 || pos >= trees.length) return;
+  public void showTree(final BigInteger pos) {
+    final ParseTree tree = model.getParseTree(pos);
+    if(tree == null) return;
     try {
-      final Displayer disp = trees[pos].getDisplayer(method);
+      final Displayer disp = tree.getDisplayer(method);
       model.newParseTreePos(pos, disp);
     } catch(final Exception e) {
       gui.showError("Couldn't open parse tree:\n" + e.getMessage());
-      model.newParseTreePos(0, null);
+      model.newParseTreePos(BigInteger.ZERO, null);
     }
   }
 
@@ -334,6 +347,11 @@ public final class Controller implements ParserInfoListener {
       return;
     }
 
+    // a running parse of an older phrase is obsolete
+    if(budget != null) budget.cancel();
+    final ParseBudget b = new ParseBudget();
+    budget = b;
+
     // make sure objects don't change during parsing
     final Object pl = parseLock;
     final DataModel m = model;
@@ -343,25 +361,28 @@ public final class Controller implements ParserInfoListener {
       @Override
       public void run() {
         synchronized(pl) {
+          if(b.isCancelled()) return;
           m.clearInfo();
-          final String g = m.getGrammar();
-          ParseTree[] trees = new ParseTree[0];
+          ParseForest forest = null;
           try {
-            trees = ChartParser.parse(new Grammar(new StringReader(g)),
-                Tokenizer.tokenize(text), Controller.this);
+            forest = reparse(m.getCompiledGrammar(),
+                Tokenizer.tokenize(text), b);
+            // the next parse shows its own result
+            if(forest.getStatus() == ParseForest.Status.CANCELLED) return;
             INI.set("last", "phrase", text);
           } catch(final ParserException e) {
             cg.showError("Parser error:\n" + e.getMessage());
           } catch(final GrammarSyntaxException e) {
-            cg.showError("Grammar error:\n" + e.getMessage());
+            cg.showError("Grammar error" + (e.getLine() > 0 ? " in line "
+                + e.getLine() : "") + ":\n" + e.getMessage());
           }
-          m.setParseTrees(trees);
-          if(trees.length == 0) {
-            m.newParseTreePos(0, null);
+          m.setParseForest(forest);
+          if(m.getParseTreeCount().signum() == 0) {
+            m.newParseTreePos(BigInteger.ZERO, null);
             return;
           }
 
-          showTree(0);
+          showTree(BigInteger.ZERO);
         }
       }
 
@@ -369,6 +390,39 @@ public final class Controller implements ParserInfoListener {
     t.start();
   }
 
+  /**
+   * Parses the given tokens, reusing the chart of the last parse. As long as
+   * the compiled grammar is the same, all edges ending before the first token that
+   * differs from the last parse are kept, and only the rest of the tokens is
+   * processed. Must be called while holding {@link #parseLock}.
+   *
+   * @param g compiled grammar
+   * @param tok tokens
+   * @param b budget of the parse
+   * @return parse forest
+   * @throws ParserException if the parser isn't successful
+   */
+  private ParseForest reparse(final Grammar g, final String[] tok,
+      final ParseBudget b) throws ParserException {
+    if(session == null || g != sessionGrammar) {
+      session = ChartParser.session(g, this, new ParserOptions());
+      sessionGrammar = g;
+      sessionTokens = tok;
+    }
+    session.budget(b);
+    // the displayed forest shares the chart that is modified from here on;
+    // once it is unset, the event dispatch thread no longer reads the chart
+    model.setParseForest(null);
+
+    final int n = Math.min(session.size(), tok.length);
+    int p = 0;
+    while(p < n && tok[p].equals(sessionTokens[p])) p++;
+    if(p < session.size()) session.truncate(p);
+    sessionTokens = tok;
+    for(int i = p; i < tok.length; i++) session.push(tok[i]);
+    return session.getForest();
+  }
+
   @Override
   public void info(final String category, final String message) {
     model.addInfo(category, message);
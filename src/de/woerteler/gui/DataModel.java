@@ -7,7 +7,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -17,6 +25,10 @@ import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 
 import de.woerteler.charty.Displayer;
+import de.woerteler.charty.Grammar;
+import de.woerteler.charty.GrammarCompiler;
+import de.woerteler.charty.GrammarSyntaxException;
+import de.woerteler.charty.ParseForest;
 import de.woerteler.charty.ParseTree;
 import de.woerteler.util.IOUtils;
 
@@ -30,6 +42,9 @@ public final class DataModel {
   /** Column names. */
   public static final String[] COLUMNS = { "Rule", "Action"};
 
+  /** Delay after the last edit before the grammar is compiled, in ms. */
+  private static final long COMPILE_DELAY = 300;
+
   /** Table model of the info table. */
   private final AbstractTableModel infoTableModel;
   /** Data of the info table. */
@@ -37,6 +52,26 @@ public final class DataModel {
 
   /** The Document for the grammar editor. */
   private Document grammar;
+  /** Lock for the compiled grammar and the revision. */
+  private final Object grammarLock = new Object();
+  /** Revision of the grammar text, increased on every edit. */
+  private long revision;
+  /** Compiled grammar, {@code null} if not compiled since the last edit. */
+  private Grammar compiled;
+  /** Pending background compilation, {@code null} if there is none. */
+  private Future<?> pending;
+  /** Compiler for the grammar, also used as lock for compiling. */
+  private final GrammarCompiler compiler = new GrammarCompiler();
+  /** Thread compiling the grammar in the background after edits. */
+  private final ScheduledExecutorService background =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+          final Thread t = new Thread(r, "GrammarCompiler");
+          t.setDaemon(true);
+          return t;
+        }
+      });
 
   /** The currently opened file. */
   private File opened;
@@ -44,11 +79,13 @@ public final class DataModel {
   /** GUI. */
   private final ChartyGUI gui;
 
-  /** Current parse trees. */
-  private ParseTree[] trees = new ParseTree[0];
+  /** Current parse forest, may be {@code null}. */
+  private ParseForest forest;
+  /** Number of trees in the current parse forest. */
+  private BigInteger count = BigInteger.ZERO;
 
   /** Current position inside the parse trees. */
-  private int parseTreePos;
+  private BigInteger parseTreePos = BigInteger.ZERO;
 
   /**
    * Constructor.
@@ -115,20 +152,24 @@ public final class DataModel {
    */
   public void setDocument(final Document doc) {
     grammar = doc;
+    invalidateGrammar();
     grammar.addDocumentListener(new DocumentListener() {
 
       @Override
       public void removeUpdate(final DocumentEvent e) {
+        invalidateGrammar();
         changed();
       }
 
       @Override
       public void insertUpdate(final DocumentEvent e) {
+        invalidateGrammar();
         changed();
       }
 
       @Override
       public void changedUpdate(final DocumentEvent e) {
+        // only attributes changed, the text is the same
         changed();
       }
 
@@ -258,21 +299,33 @@ public final class DataModel {
   }
 
   /**
-   * Sets the current parse trees.
+   * Sets the current parse forest. Its trees are counted, but only unpacked
+   * when they are requested via {@link #getParseTree(BigInteger)}.
    * 
-   * @param ts trees
+   * @param f parse forest, may be {@code null}
    */
-  public synchronized void setParseTrees(final ParseTree[] ts) {
-    trees = ts;
+  public synchronized void setParseForest(final ParseForest f) {
+    forest = f;
+    count = f == null ? BigInteger.ZERO : f.count();
   }
 
   /**
-   * Getter for the parse trees.
+   * Getter for a parse tree. Only the requested tree is unpacked.
    * 
-   * @return parse trees
+   * @param pos position of the tree
+   * @return parse tree, or {@code null} if there is none at that position
    */
-  public synchronized ParseTree[] getParseTrees() {
-    return trees;
+  public synchronized ParseTree getParseTree(final BigInteger pos) {
+    return pos.signum() >= 0 && pos.compareTo(count) < 0 ? forest.get(pos) : null;
+  }
+
+  /**
+   * Getter for the number of parse trees.
+   * 
+   * @return number of parse trees
+   */
+  public synchronized BigInteger getParseTreeCount() {
+    return count;
   }
 
   /**
@@ -281,9 +334,10 @@ public final class DataModel {
    * @param pos new position
    * @param disp the displayer
    */
-  public synchronized void newParseTreePos(final int pos, final Displayer disp) {
+  public synchronized void newParseTreePos(final BigInteger pos,
+      final Displayer disp) {
     parseTreePos = pos;
-    gui.showParseTree(disp, pos + 1, trees.length);
+    gui.showParseTree(disp, pos.add(BigInteger.ONE), count);
   }
 
   /**
@@ -291,7 +345,7 @@ public final class DataModel {
    * 
    * @return position
    */
-  public int getParseTreePos() {
+  public BigInteger getParseTreePos() {
     return parseTreePos;
   }
 
@@ -308,6 +362,72 @@ public final class DataModel {
     }
   }
 
+  /**
+   * Returns the compiled grammar. The grammar is compiled in the background
+   * shortly after every edit, so it is usually ready; otherwise it is
+   * compiled now. The same instance is returned as long as the text is not
+   * edited.
+   * 
+   * @return the compiled grammar
+   * @throws GrammarSyntaxException if the grammar is invalid
+   */
+  public Grammar getCompiledGrammar() throws GrammarSyntaxException {
+    synchronized(grammarLock) {
+      if(compiled != null) return compiled;
+    }
+    return compile();
+  }
+
+  /**
+   * Compiles the grammar unless it is ready, and reports the errors to the
+   * grammar editor.
+   * 
+   * @return the compiled grammar
+   * @throws GrammarSyntaxException if the grammar is invalid
+   */
+  private Grammar compile() throws GrammarSyntaxException {
+    synchronized(compiler) {
+      final long rev;
+      synchronized(grammarLock) {
+        if(compiled != null) return compiled;
+        rev = revision;
+      }
+      Grammar g = null;
+      try {
+        g = compiler.compile(getGrammar());
+      } finally {
+        gui.showGrammarErrors(new TreeMap<Integer, String>(compiler.getErrors()));
+      }
+      synchronized(grammarLock) {
+        // the text may have been edited while compiling
+        if(rev == revision) compiled = g;
+      }
+      return g;
+    }
+  }
+
+  /**
+   * Discards the compiled grammar after the text was edited, and schedules
+   * compiling the new text once no further edits follow.
+   */
+  private void invalidateGrammar() {
+    synchronized(grammarLock) {
+      revision++;
+      compiled = null;
+      if(pending != null) pending.cancel(false);
+      pending = background.schedule(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            compile();
+          } catch(final GrammarSyntaxException ex) {
+            // reported to the editor
+          }
+        }
+      }, COMPILE_DELAY, TimeUnit.MILLISECONDS);
+    }
+  }
+
   /** Clears the info panel. */
   public void clearInfo() {
     synchronized(infoTableModel) {
@@ -3,14 +3,21 @@ package de.woerteler.gui;
 import static de.woerteler.gui.GUIActions.ActionID.*;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.ComponentOrientation;
+import java.util.Map;
+import java.util.SortedMap;
 
 import javax.swing.JButton;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JToolBar;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
 
 /**
  * This {@link JPanel} displays the grammar that's currently used.
@@ -19,8 +26,14 @@ import javax.swing.text.Document;
  */
 public final class GrammarEditor extends JPanel {
 
+  /** Painter for lines containing errors. */
+  private static final Highlighter.HighlightPainter ERROR =
+      new DefaultHighlighter.DefaultHighlightPainter(new Color(0xFFD0D0));
+
   /** Text area. */
   private final JTextArea area;
+  /** Label showing the first error of the grammar. */
+  private final JLabel status = new JLabel();
 
   /** Serial version UID. */
   private static final long serialVersionUID = 7554060907371987000L;
@@ -46,6 +59,9 @@ public final class GrammarEditor extends JPanel {
     open.setText(null);
     toolBar.add(open);
 
+    status.setForeground(Color.RED);
+    toolBar.add(status);
+
     add(toolBar, BorderLayout.PAGE_START);
 
     area = new JTextArea();
@@ -61,6 +77,40 @@ public final class GrammarEditor extends JPanel {
     return area.getDocument();
   }
 
+  /**
+   * Marks the lines containing errors and shows the first error.
+   *
+   * @param errors error messages by line number, {@code 0} for errors that
+   *   do not refer to a single line
+   */
+  public void showErrors(final SortedMap<Integer, String> errors) {
+    final Highlighter hl = area.getHighlighter();
+    hl.removeAllHighlights();
+    final StringBuilder tip = new StringBuilder("<html>");
+    for(final Map.Entry<Integer, String> e : errors.entrySet()) {
+      final int line = e.getKey() - 1;
+      tip.append(line < 0 ? "" : "Line " + e.getKey() + ": ")
+          .append(e.getValue().replace("&", "&amp;").replace("<", "&lt;"))
+          .append("<br>");
+      if(line < 0 || line >= area.getLineCount()) continue;
+      try {
+        hl.addHighlight(area.getLineStartOffset(line),
+            area.getLineEndOffset(line), ERROR);
+      } catch(final BadLocationException ex) {
+        // the text was edited in the meantime
+      }
+    }
+    if(errors.isEmpty()) {
+      status.setText(null);
+      status.setToolTipText(null);
+    } else {
+      final int first = errors.firstKey();
+      status.setText((first == 0 ? "" : "Line " + first + ": ")
+          + errors.get(first));
+      status.setToolTipText(tip.toString());
+    }
+  }
+
   /** Rewinds the caret position to the start of the document. */
   public void rewind() {
     area.setCaretPosition(0);
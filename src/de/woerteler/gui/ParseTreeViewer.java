@@ -13,6 +13,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.geom.Rectangle2D;
+import java.math.BigInteger;
 
 import javax.swing.JButton;
 import javax.swing.JComponent;
@@ -162,15 +163,16 @@ public final class ParseTreeViewer extends JPanel {
    * @param pos current position
    * @param num current number of parse trees
    */
-  public void showParseTree(final Displayer disp, final int pos, final int num) {
+  public void showParseTree(final Displayer disp, final BigInteger pos,
+      final BigInteger num) {
     if(disp == null) {
       label.setText("nothing to show");
       left.setEnabled(false);
       right.setEnabled(false);
     } else {
       label.setText(pos + " of " + num);
-      left.setEnabled(pos > 1);
-      right.setEnabled(pos < num);
+      left.setEnabled(pos.compareTo(BigInteger.ONE) > 0);
+      right.setEnabled(pos.compareTo(num) < 0);
     }
     setTree(disp);
   }
@@ -4,9 +4,9 @@ import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
-import de.woerteler.charty.ChartParser.Edge;
 import de.woerteler.charty.DisplayMethod;
 import de.woerteler.charty.Displayer;
+import de.woerteler.charty.ParseTree;
 
 /**
  * Generates a graphical representation of the syntax tree via LaTeX and
@@ -20,20 +20,20 @@ public class LaTeXDisplay implements DisplayMethod {
    * Creates a LaTeX document for this parse tree, with help from the Qtree
    * package.
    * 
-   * @param edge The root edge.
+   * @param tree The parse tree.
    * @return LaTeX document
    */
-  private static String toLaTeX(final Edge edge) {
+  private static String toLaTeX(final ParseTree tree) {
     return "\\documentclass{article}\n\\usepackage{qtree}\n"
         + "\\usepackage[utf8]{inputenc}\n\n"
         + "\\usepackage[landscape]{geometry}\n" + "\\usepackage{fullpage}\n"
-        + "\\pagestyle{empty}\n\n\\begin{document}\n\t\\Tree " + edge.toLaTeX()
+        + "\\pagestyle{empty}\n\n\\begin{document}\n\t\\Tree " + tree.toLaTeX()
         + "\n\\end{document}\n";
   }
 
   @Override
-  public Displayer getDisplayer(final Edge e) throws Exception {
-    final BufferedImage img = LaTeX.toImage(toLaTeX(e));
+  public Displayer getDisplayer(final ParseTree tree) throws Exception {
+    final BufferedImage img = LaTeX.toImage(toLaTeX(tree));
     final Rectangle2D bbox = new Rectangle2D.Double(0, 0, img.getWidth(),
         img.getHeight());
     return new Displayer() {
@@ -7,9 +7,9 @@ import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
-import de.woerteler.charty.ChartParser.Edge;
 import de.woerteler.charty.DisplayMethod;
 import de.woerteler.charty.Displayer;
+import de.woerteler.charty.ParseTree;
 import de.woerteler.tree.render.NodeRenderer;
 import de.woerteler.tree.strategy.TreeStrategy;
 
@@ -48,10 +48,10 @@ public class DirectDisplay implements DisplayMethod {
   }
 
   @Override
-  public Displayer getDisplayer(final Edge e) throws Exception {
+  public Displayer getDisplayer(final ParseTree tree) throws Exception {
     final Font curFont = font;
     final NodeRenderer render = renderer;
-    final DisplayableNode n = generateNodeStructure(e, curFont);
+    final DisplayableNode n = generateNodeStructure(tree, curFont);
     final Rectangle2D bbox = n.getBoundingBox();
     return new Displayer() {
 
@@ -72,13 +72,14 @@ public class DirectDisplay implements DisplayMethod {
   }
 
   /**
-   * Builds a {@link DisplayableNode} structure out of syntax tree edges.
+   * Builds a {@link DisplayableNode} structure out of a syntax tree.
    * 
-   * @param e The root node.
+   * @param tree The syntax tree.
    * @param curFont The font that will be used to draw.
    * @return A draw-able node structure.
    */
-  private DisplayableNode generateNodeStructure(final Edge e, final Font curFont) {
+  private DisplayableNode generateNodeStructure(final ParseTree tree,
+      final Font curFont) {
     // generate a dummy image to get the font metrics of the font
     final BufferedImage dummy = new BufferedImage(1, 1,
         BufferedImage.TYPE_INT_ARGB);
@@ -87,7 +88,7 @@ public class DirectDisplay implements DisplayMethod {
       dummyGfx.setFont(curFont);
     }
     final FontMetrics fm = dummyGfx.getFontMetrics();
-    final TreeNode tn = generateNodeStructure(e, (TreeNode) null);
+    final TreeNode tn = generateNodeStructure(tree, (TreeNode) null);
     final DisplayableNode n = strategy.generateNodeStructure(tn, new Measures(fm));
     dummyGfx.dispose();
     dummy.flush();
@@ -97,21 +98,16 @@ public class DirectDisplay implements DisplayMethod {
   /**
    * Builds a {@link TreeNode} structure out of parts of a syntax tree.
    * 
-   * @param e A syntax tree node.
+   * @param t A syntax tree node.
    * @param parent The parent of the current node.
    * @return The node structure.
    */
-  private static TreeNode generateNodeStructure(final Edge e, final TreeNode parent) {
-    final TreeNode n = new TreeNode(parent, e.lhs);
-    if(e.hasRealChildren()) {
-      for(final Edge c : e) {
-        final TreeNode nc = generateNodeStructure(c, n);
-        n.addChild(nc);
-      }
-    } else {
-      for(final String label : e.rhs) {
-        n.addChild(new TreeNode(n, label));
-      }
+  private static TreeNode generateNodeStructure(final ParseTree t,
+      final TreeNode parent) {
+    final TreeNode n = new TreeNode(parent, t.getLabel());
+    for(final ParseTree c : t) {
+      final TreeNode nc = generateNodeStructure(c, n);
+      n.addChild(nc);
     }
     return n;
   }
@@ -0,0 +1,91 @@
+package de.woerteler.util;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive integers.
+ *
+ * @author Leo Woerteler
+ */
+public final class IntList {
+
+  /** Initial capacity. */
+  private static final int CAP = 8;
+
+  /** Elements. */
+  private int[] list;
+  /** Number of elements. */
+  private int size;
+
+  /** Creates an empty list. */
+  public IntList() {
+    this(CAP);
+  }
+
+  /**
+   * Creates an empty list with the given initial capacity.
+   *
+   * @param cap initial capacity
+   */
+  public IntList(final int cap) {
+    list = new int[Math.max(1, cap)];
+  }
+
+  /**
+   * Appends an element.
+   *
+   * @param i element
+   */
+  public void add(final int i) {
+    if(size == list.length) list = Arrays.copyOf(list, size << 1);
+    list[size++] = i;
+  }
+
+  /**
+   * Returns the element at the given position.
+   *
+   * @param pos position
+   * @return element
+   */
+  public int get(final int pos) {
+    return list[pos];
+  }
+
+  /**
+   * Replaces the element at the given position.
+   *
+   * @param pos position
+   * @param i new element
+   */
+  public void set(final int pos, final int i) {
+    list[pos] = i;
+  }
+
+  /**
+   * Number of elements.
+   *
+   * @return size of the list
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all elements from the given position on.
+   *
+   * @param sz new size, not larger than the current one
+   */
+  public void truncate(final int sz) {
+    size = sz;
+  }
+
+  /**
+   * Returns a copy of the elements as an array of minimal size.
+   *
+   * @return array
+   */
+  public int[] toArray() {
+    return Arrays.copyOf(list, size);
+  }
+
+}